@@ -0,0 +1,102 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * BenchmarkData - configurations and cache directories shared by the benchmarks and tests
+ */
+public final class BenchmarkData {
+    private final static long ONE_DAY = 24 * 60 * 60 * 1000L;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Build a configuration JSON as returned by the server, expiring in a day.
+     * Property values repeat, as they do in real segments, so the payload compresses realistically.
+     * @param keys - the number of features, and of properties
+     * @param seed - the seed of the feature values, so runs are reproducible
+     */
+    public static JSONObject configurationJson(int keys, long seed) {
+        Random random = new Random(seed);
+        JSONObject features = new JSONObject();
+        JSONObject properties = new JSONObject();
+        for (int i = 0; i < keys; i++) {
+            features.put(featureId(i), random.nextBoolean());
+            properties.put(propertyId(i), "https://cdn.example.com/assets/banner-" + (i % 50) + ".png");
+        }
+        JSONObject data = new JSONObject();
+        data.put(ConfigurationInstance.FEATURES_KEY, features);
+        data.put(ConfigurationInstance.PROPERTIES_KEY, properties);
+        JSONObject json = new JSONObject();
+        json.put(ConfigurationInstance.DATA_KEY, data);
+        json.put(ConfigurationInstance.EXPIRES_AT_KEY, httpDate(System.currentTimeMillis() + ONE_DAY));
+        return json;
+    }
+
+    public static ConfigurationInstance configuration(String id, int keys) {
+        return new ConfigurationInstance(id, configurationJson(keys, id.hashCode()), 0, System.currentTimeMillis(), "\"" + id + "-v1\"");
+    }
+
+    public static String featureId(int index) {
+        return "feature_" + index;
+    }
+
+    public static String propertyId(int index) {
+        return "property_" + index;
+    }
+
+    public static String httpDate(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(millis));
+    }
+
+    /**
+     * Create an empty directory for a disk cache, deleted when the JVM exits
+     */
+    public static File cacheDirectory(String name) throws IOException {
+        File directory = File.createTempFile("liveupdate-" + name, "");
+        if (!directory.delete() || !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory.getAbsolutePath());
+        }
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    /**
+     * Delete a cache directory and everything in it
+     */
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
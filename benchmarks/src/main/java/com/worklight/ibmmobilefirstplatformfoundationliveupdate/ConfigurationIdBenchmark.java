@@ -0,0 +1,87 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate;
+
+import android.content.Context;
+
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache.LocalCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConfigurationIdBenchmark - building the cache id of a params based configuration,
+ * against the id built by previous versions as a baseline.
+ * 3 params give a plain id, 20 params exceed the id length limit and are hashed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigurationIdBenchmark {
+    @Param({"3", "20"})
+    int paramCount;
+
+    private File directory;
+    private LiveUpdateManager manager;
+    private Map<String, String> params;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = BenchmarkData.cacheDirectory("id");
+        LocalCache.setCacheDirectory(directory);
+        manager = LiveUpdateManager.getInstance(new Context());
+        params = new HashMap<String, String>();
+        for (int i = 0; i < paramCount; i++) {
+            params.put("param" + i, "value " + i);
+        }
+        // The first call of an id checks the legacy cache folder, only later calls are measured
+        manager.buildIDFromParams(params);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(directory);
+    }
+
+    @Benchmark
+    public String buildIDFromParams() {
+        return manager.buildIDFromParams(params);
+    }
+
+    @Benchmark
+    public String buildLegacyIDFromParams() {
+        return manager.buildLegacyIDFromParams(params);
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConfigurationLookupBenchmark - isFeatureEnabled and getProperty on an indexed configuration,
+ * cycling through all its keys so the lookups are not served from a single hot entry
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConfigurationLookupBenchmark {
+    @Param({"10", "1000", "50000"})
+    int keys;
+
+    private ConfigurationInstance configuration;
+    private String[] featureIds;
+    private String[] propertyIds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        configuration = BenchmarkData.configuration("vip", keys);
+        featureIds = new String[keys];
+        propertyIds = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            featureIds[i] = BenchmarkData.featureId(i);
+            propertyIds[i] = BenchmarkData.propertyId(i);
+        }
+        // Build the index outside of the measurement
+        configuration.isFeatureEnabled(featureIds[0]);
+    }
+
+    @Benchmark
+    public Boolean isFeatureEnabled() {
+        int index = next++;
+        if (next == keys) {
+            next = 0;
+        }
+        return configuration.isFeatureEnabled(featureIds[index]);
+    }
+
+    @Benchmark
+    public String getProperty() {
+        int index = next++;
+        if (next == keys) {
+            next = 0;
+        }
+        return configuration.getProperty(propertyIds[index]);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache;
+
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.BenchmarkData;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.Configuration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LocalCacheBenchmark - LocalCache.getConfiguration served from the memory tier (warm) and from disk (cold)
+ * </p>
+ * Each benchmark runs in its own fork, as the cache is static.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalCacheBenchmark {
+    private final static String ID = "vip";
+
+    @State(Scope.Benchmark)
+    public static class CacheState {
+        @Param({"10", "1000", "50000"})
+        int keys;
+
+        File directory;
+
+        void setUp(int memoryCapacity) throws Exception {
+            directory = BenchmarkData.cacheDirectory("localcache");
+            LocalCache.setCacheDirectory(directory);
+            LocalCache.setMemoryCapacity(memoryCapacity);
+            LocalCache.saveConfiguration(BenchmarkData.configuration(ID, keys));
+            while (LocalCache.getPendingWriteCount() > 0) {
+                Thread.sleep(10);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            BenchmarkData.delete(directory);
+        }
+    }
+
+    public static class WarmState extends CacheState {
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            setUp(32);
+            LocalCache.getConfiguration(ID);
+        }
+    }
+
+    public static class ColdState extends CacheState {
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            // Without a memory tier every lookup reads the record from disk
+            setUp(0);
+        }
+    }
+
+    @Benchmark
+    public Configuration getConfigurationWarm(WarmState state) {
+        return LocalCache.getConfiguration(ID);
+    }
+
+    @Benchmark
+    public Configuration getConfigurationCold(ColdState state) {
+        return LocalCache.getConfiguration(ID);
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache;
+
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.BenchmarkData;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PayloadReadBenchmark - reading a cached JSON payload with the legacy FileReader / readLine loop
+ * against the FileChannel read with a single UTF-8 decode used by the record files, with and without parsing it
+ * </p>
+ * 10 keys give a payload of about 1 KB, 1000 keys about 90 KB (memory mapped) and 5000 keys about 450 KB.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PayloadReadBenchmark {
+    @Param({"10", "100", "1000", "5000"})
+    int keys;
+
+    private File directory;
+    private File file;
+    private int length;
+    private Object recordFile;
+    private Method decode;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = BenchmarkData.cacheDirectory("payload");
+        file = new File(directory, "configuration.json");
+        byte[] payload = BenchmarkData.configurationJson(keys, 42).toString().getBytes("UTF-8");
+        length = payload.length;
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(payload);
+        } finally {
+            out.close();
+        }
+
+        // The decode of the record files, as the cache reads payloads
+        Class<?> recordFileClass = Class.forName(CacheFileManager.class.getName() + "$RecordFile");
+        Constructor<?> constructor = recordFileClass.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        recordFile = constructor.newInstance();
+        decode = recordFileClass.getSuperclass().getDeclaredMethod("decode", FileChannel.class, long.class, int.class);
+        decode.setAccessible(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(directory);
+    }
+
+    @Benchmark
+    public String legacyReadLine() throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            StringBuilder jsonSB = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null) {
+                jsonSB.append(line);
+            }
+            return jsonSB.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public String channelDecode() throws Exception {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            return (String) decode.invoke(recordFile, in.getChannel(), 0L, length);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public JSONObject legacyReadLineAndParse() throws Exception {
+        return new JSONObject(legacyReadLine());
+    }
+
+    @Benchmark
+    public JSONObject channelDecodeAndParse() throws Exception {
+        return new JSONObject(channelDecode());
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache;
+
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.BenchmarkData;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.ConfigurationInstance;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.Configuration;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RecordFileBenchmark - saving and reading a configuration record, and reading only its header expiration,
+ * with the payload stored plain or Deflate compressed
+ * </p>
+ * A read followed by a lookup is what native callers pay, a read followed by getData() what the plugin pays.
+ * Saves include the fsync of the record, as on the device.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecordFileBenchmark {
+    private final static String ID = "vip";
+
+    @Param({"10", "100", "1000", "5000", "50000"})
+    int keys;
+
+    /** Compression threshold in bytes, 0 stores the payload plain and 1 always compresses it */
+    @Param({"0", "1"})
+    int compressionThreshold;
+
+    private File directory;
+    private ConfigurationInstance configuration;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = BenchmarkData.cacheDirectory("record");
+        CacheFileManager.setCacheDirectory(directory);
+        CacheFileManager.setCompressionThreshold(compressionThreshold);
+        configuration = BenchmarkData.configuration(ID, keys);
+        CacheFileManager.save(configuration);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(directory);
+    }
+
+    @Benchmark
+    public void save() {
+        CacheFileManager.save(configuration);
+    }
+
+    @Benchmark
+    public Configuration read() {
+        return CacheFileManager.configuration(ID);
+    }
+
+    @Benchmark
+    public Boolean readLookup() {
+        return CacheFileManager.configuration(ID).isFeatureEnabled(BenchmarkData.featureId(0));
+    }
+
+    @Benchmark
+    public JSONObject readData() {
+        return ((ConfigurationInstance) CacheFileManager.configuration(ID)).getData();
+    }
+
+    @Benchmark
+    public long readExpiresAt() {
+        return CacheFileManager.expiresAt(ID);
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package android.content;
+
+import android.content.res.AssetManager;
+
+import java.io.File;
+
+/**
+ * Context - JVM stand-in for the Android context, backed by the temporary directory
+ */
+public class Context {
+    public File getCacheDir() {
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    public String getPackageName() {
+        return "com.ibm.mfp.liveupdate.benchmarks";
+    }
+
+    public AssetManager getAssets() {
+        return new AssetManager();
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.wlclient.api;
+
+import android.content.Context;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * WLClient - JVM stand-in pointing at a local server URL
+ */
+public class WLClient {
+    private static WLClient instance;
+    private final Context context;
+
+    private WLClient(Context context) {
+        this.context = context;
+    }
+
+    public static synchronized WLClient createInstance(Context context) {
+        instance = new WLClient(context);
+        return instance;
+    }
+
+    public static synchronized WLClient getInstance() {
+        if (instance == null) {
+            instance = new WLClient(new Context());
+        }
+        return instance;
+    }
+
+    public URL getServerUrl() {
+        try {
+            return new URL("http://localhost:9080/mfp/api");
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Context getContext() {
+        return context;
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.wlclient.api;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * WLResourceRequest - JVM stand-in without a network
+ * </p>
+ * Requests are answered synchronously with the queued responses, in order, or else fail as unreachable.
+ * A response is delivered to onFailure when it is a WLFailResponse, and to onSuccess otherwise.
+ * Sent requests are recorded, so tests can check the headers they carried.
+ */
+public class WLResourceRequest {
+    public static final String GET = "GET";
+
+    private static final Queue<WLResponse> responses = new ConcurrentLinkedQueue<WLResponse>();
+    private static final Queue<WLResourceRequest> sentRequests = new ConcurrentLinkedQueue<WLResourceRequest>();
+
+    private final URI url;
+    private final Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+
+    public WLResourceRequest(URI url, String method, String scope) {
+        this.url = url;
+    }
+
+    public static void enqueueResponse(WLResponse response) {
+        responses.add(response);
+    }
+
+    public static void clearResponses() {
+        responses.clear();
+        sentRequests.clear();
+    }
+
+    public static List<WLResourceRequest> getSentRequests() {
+        return new ArrayList<WLResourceRequest>(sentRequests);
+    }
+
+    public URI getUrl() {
+        return url;
+    }
+
+    public void setQueryParameter(String name, String value) {
+    }
+
+    public void addHeader(String name, String value) {
+        List<String> values = headers.get(name);
+        if (values == null) {
+            values = new ArrayList<String>();
+            headers.put(name, values);
+        }
+        values.add(value);
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    public List<String> getHeaders(String name) {
+        List<String> values = headers.get(name);
+        return values != null ? values : new ArrayList<String>();
+    }
+
+    public void send(WLResponseListener listener) {
+        sentRequests.add(this);
+        WLResponse response = responses.poll();
+        if (response == null) {
+            response = new WLFailResponse(-1, "no network in the JVM benchmarks");
+        }
+        if (response instanceof WLFailResponse) {
+            listener.onFailure((WLFailResponse) response);
+        } else {
+            listener.onSuccess(response);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.wlclient.api;
+
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WLResponse - JVM stand-in holding a status, headers and a body
+ */
+public class WLResponse {
+    private final int status;
+    private final Map<String, List<String>> headers;
+    private final String responseText;
+
+    public WLResponse(int status, Map<String, List<String>> headers, String responseText) {
+        this.status = status;
+        this.headers = headers != null ? headers : Collections.<String, List<String>>emptyMap();
+        this.responseText = responseText;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    public String getResponseText() {
+        return responseText;
+    }
+
+    public JSONObject getResponseJSON() {
+        try {
+            return responseText != null ? new JSONObject(responseText) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
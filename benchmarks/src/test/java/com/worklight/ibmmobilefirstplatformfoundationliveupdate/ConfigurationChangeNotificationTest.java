@@ -0,0 +1,130 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate;
+
+import android.content.Context;
+
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.Configuration;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.ConfigurationChangeListener;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.ConfigurationListener;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache.LocalCache;
+import com.worklight.wlclient.api.WLFailResponse;
+import com.worklight.wlclient.api.WLResourceRequest;
+import com.worklight.wlclient.api.WLResponse;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigurationChangeNotificationTest {
+    private static File directory;
+    private static LiveUpdateManager manager;
+
+    private final List<Configuration> changes = new ArrayList<Configuration>();
+    private final ConfigurationChangeListener changeListener = new ConfigurationChangeListener() {
+        @Override
+        public void onChange(Configuration configuration) {
+            changes.add(configuration);
+        }
+    };
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        directory = BenchmarkData.cacheDirectory("notify");
+        LocalCache.setCacheDirectory(directory);
+        manager = LiveUpdateManager.getInstance(new Context());
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        BenchmarkData.delete(directory);
+    }
+
+    @After
+    public void tearDown() {
+        WLResourceRequest.clearResponses();
+    }
+
+    private static String configuration(String data) {
+        return "{\"data\": " + data + ", \"expiresAt\": \"" + BenchmarkData.httpDate(System.currentTimeMillis() + 60 * 60 * 1000L) + "\"}";
+    }
+
+    // Fetches the segment from the (stubbed) server, bypassing the cache
+    private static void fetch(String segmentId, String payload) {
+        WLResourceRequest.enqueueResponse(new WLResponse(200, null, payload));
+        final List<Object> results = new ArrayList<Object>();
+        manager.obtainConfiguration(segmentId, false, new ConfigurationListener() {
+            @Override
+            public void onSuccess(Configuration configuration) {
+                results.add(configuration);
+            }
+
+            @Override
+            public void onFailure(WLFailResponse wlFailResponse) {
+                results.add(wlFailResponse);
+            }
+        });
+        assertEquals(1, results.size());
+        assertTrue(results.get(0) instanceof Configuration);
+    }
+
+    @Test
+    public void unchangedSnapshotDoesNotNotify() {
+        WLResourceRequest.enqueueResponse(new WLResponse(200, null,
+                configuration("{\"features\": {\"a\": true, \"b\": false}, \"properties\": {\"x\": \"1\", \"y\": \"2\"}}")));
+        manager.subscribe("unchanged", changeListener);
+        try {
+            fetch("unchanged", configuration("{\"properties\": {\"y\": \"2\", \"x\": \"1\"}, \"features\": {\"b\": false, \"a\": true}}"));
+
+            assertEquals(0, changes.size());
+        } finally {
+            manager.unsubscribe("unchanged", changeListener);
+        }
+    }
+
+    @Test
+    public void changedSnapshotNotifiesOnce() {
+        WLResourceRequest.enqueueResponse(new WLResponse(200, null, configuration("{\"features\": {\"a\": true}, \"properties\": {\"x\": \"1\"}}")));
+        manager.subscribe("changed", changeListener);
+        try {
+            fetch("changed", configuration("{\"features\": {\"a\": true}, \"properties\": {\"x\": \"2\"}}"));
+
+            assertEquals(1, changes.size());
+            assertEquals("2", changes.get(0).getProperty("x"));
+        } finally {
+            manager.unsubscribe("changed", changeListener);
+        }
+    }
+
+    @Test
+    public void unsubscribedListenerIsNotNotified() {
+        WLResourceRequest.enqueueResponse(new WLResponse(200, null, configuration("{\"features\": {\"a\": true}}")));
+        manager.subscribe("unsubscribed", changeListener);
+        manager.unsubscribe("unsubscribed", changeListener);
+
+        fetch("unsubscribed", configuration("{\"features\": {\"a\": false}}"));
+
+        assertEquals(0, changes.size());
+    }
+}
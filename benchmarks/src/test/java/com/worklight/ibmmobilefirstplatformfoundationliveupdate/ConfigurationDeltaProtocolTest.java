@@ -0,0 +1,186 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate;
+
+import android.content.Context;
+
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.Configuration;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.ConfigurationListener;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache.LocalCache;
+import com.worklight.wlclient.api.WLFailResponse;
+import com.worklight.wlclient.api.WLResourceRequest;
+import com.worklight.wlclient.api.WLResponse;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The delta protocol through LiveUpdateManager, against the stubbed server
+ */
+public class ConfigurationDeltaProtocolTest {
+    private static final String BASE_VALIDATOR = "\"v1\"";
+    private static final String NEW_VALIDATOR = "\"v2\"";
+    private static final long ONE_HOUR = 60 * 60 * 1000L;
+
+    private static File directory;
+    private static LiveUpdateManager manager;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        directory = BenchmarkData.cacheDirectory("delta");
+        LocalCache.setCacheDirectory(directory);
+        manager = LiveUpdateManager.getInstance(new Context());
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        BenchmarkData.delete(directory);
+    }
+
+    @After
+    public void tearDown() {
+        WLResourceRequest.clearResponses();
+    }
+
+    private static Map<String, List<String>> headers(String... namesAndValues) {
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            headers.put(namesAndValues[i], Collections.singletonList(namesAndValues[i + 1]));
+        }
+        return headers;
+    }
+
+    private static String configuration(String data, long expiresAt) {
+        return "{\"data\": " + data + ", \"expiresAt\": \"" + BenchmarkData.httpDate(expiresAt) + "\"}";
+    }
+
+    // Caches the segment as returned by the server with the base validator
+    private static void seed(String segmentId, long expiresAt) {
+        WLResourceRequest.enqueueResponse(new WLResponse(200, headers("ETag", BASE_VALIDATOR),
+                configuration("{\"features\": {\"a\": true}, \"properties\": {\"x\": \"1\"}}", expiresAt)));
+        fetch(segmentId);
+        WLResourceRequest.clearResponses();
+    }
+
+    // Fetches the segment from the (stubbed) server, bypassing the cache
+    private static Configuration fetch(String segmentId) {
+        final List<Object> results = new ArrayList<Object>();
+        manager.obtainConfiguration(segmentId, false, new ConfigurationListener() {
+            @Override
+            public void onSuccess(Configuration configuration) {
+                results.add(configuration);
+            }
+
+            @Override
+            public void onFailure(WLFailResponse wlFailResponse) {
+                results.add(wlFailResponse);
+            }
+        });
+        assertEquals(1, results.size());
+        assertTrue(results.get(0) instanceof Configuration);
+        return (Configuration) results.get(0);
+    }
+
+    private static WLResponse delta(String base, String properties, String... headers) {
+        String[] deltaHeaders = new String[headers.length + 4];
+        deltaHeaders[0] = "IM";
+        deltaHeaders[1] = ConfigurationDelta.DELTA_IM;
+        deltaHeaders[2] = "ETag";
+        deltaHeaders[3] = NEW_VALIDATOR;
+        System.arraycopy(headers, 0, deltaHeaders, 4, headers.length);
+        return new WLResponse(226, headers(deltaHeaders), "{\"base\": " + JSONObject.quote(base) + ", \"properties\": " + properties + "}");
+    }
+
+    @Test
+    public void appliesAndCachesADelta() {
+        seed("delta-applied", System.currentTimeMillis() + ONE_HOUR);
+        WLResourceRequest.enqueueResponse(delta(BASE_VALIDATOR, "{\"changed\": {\"x\": \"2\"}, \"added\": {\"y\": \"3\"}}"));
+
+        Configuration configuration = fetch("delta-applied");
+
+        List<WLResourceRequest> requests = WLResourceRequest.getSentRequests();
+        assertEquals(1, requests.size());
+        assertEquals(Collections.singletonList(BASE_VALIDATOR), requests.get(0).getHeaders("If-None-Match"));
+        assertEquals(Collections.singletonList(ConfigurationDelta.DELTA_IM), requests.get(0).getHeaders("A-IM"));
+        assertEquals("2", configuration.getProperty("x"));
+        assertEquals("3", configuration.getProperty("y"));
+        assertTrue(configuration.isFeatureEnabled("a"));
+
+        ConfigurationInstance cached = (ConfigurationInstance) LocalCache.getAnyConfiguration("delta-applied");
+        assertEquals(NEW_VALIDATOR, cached.getValidator());
+        assertEquals("2", cached.getProperty("x"));
+        assertEquals("3", cached.getProperty("y"));
+    }
+
+    @Test
+    public void fallsBackToAFullFetchWithoutA_IMWhenTheDeltaDoesNotApply() {
+        seed("delta-fallback", System.currentTimeMillis() + ONE_HOUR);
+        WLResourceRequest.enqueueResponse(delta("\"v0\"", "{\"changed\": {\"x\": \"2\"}}"));
+        WLResourceRequest.enqueueResponse(new WLResponse(200, headers("ETag", NEW_VALIDATOR),
+                configuration("{\"features\": {\"a\": false}, \"properties\": {\"x\": \"5\"}}", System.currentTimeMillis() + ONE_HOUR)));
+
+        Configuration configuration = fetch("delta-fallback");
+
+        List<WLResourceRequest> requests = WLResourceRequest.getSentRequests();
+        assertEquals(2, requests.size());
+        assertEquals(Collections.singletonList(ConfigurationDelta.DELTA_IM), requests.get(0).getHeaders("A-IM"));
+        assertTrue(requests.get(1).getHeaders("A-IM").isEmpty());
+        assertEquals(Collections.singletonList(BASE_VALIDATOR), requests.get(1).getHeaders("If-None-Match"));
+        assertEquals("5", configuration.getProperty("x"));
+        assertFalse(configuration.isFeatureEnabled("a"));
+        assertEquals("5", LocalCache.getAnyConfiguration("delta-fallback").getProperty("x"));
+    }
+
+    @Test
+    public void deltaOfAnExpiredConfigurationIsNotExpired() {
+        long now = System.currentTimeMillis();
+        seed("delta-expired", now - 1000L);
+        WLResourceRequest.enqueueResponse(delta(BASE_VALIDATOR, "{\"changed\": {\"x\": \"2\"}}"));
+
+        fetch("delta-expired");
+
+        Configuration cached = LocalCache.getConfiguration("delta-expired");
+        assertEquals("2", cached.getProperty("x"));
+        assertFalse(LocalCache.isExpired(cached));
+    }
+
+    @Test
+    public void deltaExpirationIsTakenFromTheResponseHeaders() {
+        long now = System.currentTimeMillis();
+        seed("delta-max-age", now + ONE_HOUR);
+        WLResourceRequest.enqueueResponse(delta(BASE_VALIDATOR, "{\"changed\": {\"x\": \"2\"}}", "Cache-Control", "max-age=7200"));
+
+        fetch("delta-max-age");
+
+        long expiresAt = LocalCache.getExpiresAt(LocalCache.getAnyConfiguration("delta-max-age"));
+        assertTrue(expiresAt >= now + 2 * ONE_HOUR);
+        assertTrue(expiresAt <= System.currentTimeMillis() + 2 * ONE_HOUR);
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate;
+
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache.CacheFileManager;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigurationDeltaTest {
+    private static final String BASE_VALIDATOR = "\"v1\"";
+    private static final String NEW_VALIDATOR = "\"v2\"";
+
+    private static ConfigurationInstance base() {
+        return new ConfigurationInstance("vip", new JSONObject(
+                "{\"data\": {\"features\": {\"a\": true, \"b\": false}, \"properties\": {\"x\": \"1\", \"y\": \"2\"}},"
+                        + " \"expiresAt\": \"Thu, 01 Jan 2026 00:00:00 GMT\"}"),
+                0, 1000L, BASE_VALIDATOR);
+    }
+
+    private static JSONObject delta(String base, String features, String properties) {
+        JSONObject delta = new JSONObject();
+        delta.put("base", base);
+        if (features != null) {
+            delta.put("features", new JSONObject(features));
+        }
+        if (properties != null) {
+            delta.put("properties", new JSONObject(properties));
+        }
+        return delta;
+    }
+
+    @Test
+    public void appliesAddedChangedAndRemovedKeys() {
+        JSONObject delta = delta(BASE_VALIDATOR,
+                "{\"added\": {\"c\": true}, \"changed\": {\"b\": true}, \"removed\": [\"a\"]}",
+                "{\"added\": {\"z\": \"3\"}, \"changed\": {\"x\": \"10\"}, \"removed\": [\"y\"]}");
+        delta.put("expiresAt", "Fri, 02 Jan 2026 00:00:00 GMT");
+
+        ConfigurationInstance configuration = ConfigurationDelta.apply(base(), delta, 2000L, 0, NEW_VALIDATOR);
+
+        assertEquals("vip", configuration.getId());
+        assertEquals(NEW_VALIDATOR, configuration.getValidator());
+        assertEquals(2000L, configuration.getFetchedAt());
+        assertNull(configuration.isFeatureEnabled("a"));
+        assertTrue(configuration.isFeatureEnabled("b"));
+        assertTrue(configuration.isFeatureEnabled("c"));
+        assertEquals("10", configuration.getProperty("x"));
+        assertNull(configuration.getProperty("y"));
+        assertEquals("3", configuration.getProperty("z"));
+        assertEquals("Fri, 02 Jan 2026 00:00:00 GMT", configuration.getData().getString("expiresAt"));
+    }
+
+    @Test
+    public void leavesTheBaseConfigurationUnchanged() {
+        ConfigurationInstance base = base();
+        String before = base.getData().toString();
+
+        ConfigurationDelta.apply(base, delta(BASE_VALIDATOR, "{\"removed\": [\"a\"]}", null), 2000L, 0, NEW_VALIDATOR);
+
+        assertEquals(before, base.getData().toString());
+        assertTrue(base.isFeatureEnabled("a"));
+    }
+
+    @Test
+    public void usesTheGivenExpiration() {
+        ConfigurationInstance configuration = ConfigurationDelta.apply(base(), delta(BASE_VALIDATOR, null, null), 2000L, 5000L, NEW_VALIDATOR);
+
+        assertEquals(5000L, configuration.getExpiresAt());
+    }
+
+    @Test
+    public void readsTheExpirationOfTheDelta() throws Exception {
+        JSONObject delta = delta(BASE_VALIDATOR, null, null);
+        assertEquals(0, ConfigurationDelta.expiresAt(delta));
+
+        delta.put("expiresAt", "Fri, 02 Jan 2026 00:00:00 GMT");
+        assertEquals(CacheFileManager.parseHttpDate("Fri, 02 Jan 2026 00:00:00 GMT"), ConfigurationDelta.expiresAt(delta));
+
+        delta.put("expiresAt", "not a date");
+        assertEquals(0, ConfigurationDelta.expiresAt(delta));
+    }
+
+    @Test
+    public void rejectsADeltaComputedAgainstAnotherBase() {
+        assertNull(ConfigurationDelta.apply(base(), delta("\"v0\"", "{\"added\": {\"c\": true}}", null), 2000L, 0, NEW_VALIDATOR));
+    }
+
+    @Test
+    public void rejectsADeltaWithoutBase() {
+        JSONObject delta = delta(BASE_VALIDATOR, "{\"added\": {\"c\": true}}", null);
+        delta.remove("base");
+
+        assertNull(ConfigurationDelta.apply(base(), delta, 2000L, 0, NEW_VALIDATOR));
+    }
+
+    @Test
+    public void rejectsAddingAnExistingKey() {
+        assertNull(ConfigurationDelta.apply(base(), delta(BASE_VALIDATOR, "{\"added\": {\"a\": false}}", null), 2000L, 0, NEW_VALIDATOR));
+        assertNull(ConfigurationDelta.apply(base(), delta(BASE_VALIDATOR, null, "{\"added\": {\"x\": \"5\"}}"), 2000L, 0, NEW_VALIDATOR));
+    }
+
+    @Test
+    public void rejectsChangingAMissingKey() {
+        assertNull(ConfigurationDelta.apply(base(), delta(BASE_VALIDATOR, "{\"changed\": {\"missing\": true}}", null), 2000L, 0, NEW_VALIDATOR));
+        assertNull(ConfigurationDelta.apply(base(), delta(BASE_VALIDATOR, null, "{\"changed\": {\"missing\": \"5\"}}"), 2000L, 0, NEW_VALIDATOR));
+    }
+
+    @Test
+    public void rejectsRemovingAMissingKeySoTheCallerFallsBackToAFullFetch() {
+        assertNull(ConfigurationDelta.apply(base(), delta(BASE_VALIDATOR, "{\"removed\": [\"missing\"]}", null), 2000L, 0, NEW_VALIDATOR));
+        assertNull(ConfigurationDelta.apply(base(), delta(BASE_VALIDATOR, null, "{\"removed\": [\"missing\"]}"), 2000L, 0, NEW_VALIDATOR));
+    }
+
+    @Test
+    public void addsSectionsMissingFromTheBase() {
+        ConfigurationInstance base = new ConfigurationInstance("vip", new JSONObject("{\"data\": {}}"), 0, 1000L, BASE_VALIDATOR);
+
+        ConfigurationInstance configuration = ConfigurationDelta.apply(base,
+                delta(BASE_VALIDATOR, "{\"added\": {\"c\": true}}", "{\"added\": {\"z\": \"3\"}}"), 2000L, 0, NEW_VALIDATOR);
+
+        assertTrue(configuration.isFeatureEnabled("c"));
+        assertEquals("3", configuration.getProperty("z"));
+        assertFalse(configuration.isFeatureEnabled("d", false));
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate;
+
+import android.content.Context;
+
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.Configuration;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.ConfigurationListener;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache.LocalCache;
+import com.worklight.wlclient.api.WLFailResponse;
+import com.worklight.wlclient.api.WLResourceRequest;
+import com.worklight.wlclient.api.WLResponse;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ConfigurationIdTest {
+    private static File directory;
+    private static LiveUpdateManager manager;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        directory = BenchmarkData.cacheDirectory("id");
+        LocalCache.setCacheDirectory(directory);
+        manager = LiveUpdateManager.getInstance(new Context());
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        BenchmarkData.delete(directory);
+    }
+
+    @After
+    public void tearDown() {
+        WLResourceRequest.clearResponses();
+    }
+
+    private static WLResponse configuration(String value) {
+        return new WLResponse(200, null, "{\"data\": {\"properties\": {\"x\": \"" + value + "\"}}, \"expiresAt\": \""
+                + BenchmarkData.httpDate(System.currentTimeMillis() + 60 * 60 * 1000L) + "\"}");
+    }
+
+    private static class ResultListener implements ConfigurationListener {
+        final List<Configuration> configurations = new ArrayList<Configuration>();
+
+        @Override
+        public void onSuccess(Configuration configuration) {
+            configurations.add(configuration);
+        }
+
+        @Override
+        public void onFailure(WLFailResponse wlFailResponse) {
+        }
+    }
+
+    @Test
+    public void emptyParamsDoNotShareTheCacheOfASegmentNamedParams() {
+        WLResourceRequest.enqueueResponse(configuration("segment"));
+        manager.obtainConfiguration("params", true, new ResultListener());
+        WLResourceRequest.enqueueResponse(configuration("params"));
+        manager.obtainConfiguration(new HashMap<String, String>(), true, new ResultListener());
+
+        ResultListener segment = new ResultListener();
+        manager.obtainConfiguration("params", true, segment);
+        ResultListener params = new ResultListener();
+        manager.obtainConfiguration(new HashMap<String, String>(), true, params);
+
+        assertEquals("segment", segment.configurations.get(0).getProperty("x"));
+        assertEquals("params", params.configurations.get(0).getProperty("x"));
+    }
+
+    @Test
+    public void paramsWithTheSameStringFormGetDifferentIds() {
+        Map<String, String> joined = new HashMap<String, String>();
+        joined.put("a", "1, b=2");
+        Map<String, String> split = new HashMap<String, String>();
+        split.put("a", "1");
+        split.put("b", "2");
+        assertEquals(new TreeMap<String, String>(joined).toString(), new TreeMap<String, String>(split).toString());
+
+        assertNotEquals(manager.buildIDFromParams(joined), manager.buildIDFromParams(split));
+    }
+}
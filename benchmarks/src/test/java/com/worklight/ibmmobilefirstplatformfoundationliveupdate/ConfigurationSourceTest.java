@@ -0,0 +1,131 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate;
+
+import android.content.Context;
+
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.Configuration;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.ConfigurationListener;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.ConfigurationSource;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache.LocalCache;
+import com.worklight.wlclient.api.WLFailResponse;
+import com.worklight.wlclient.api.WLResourceRequest;
+import com.worklight.wlclient.api.WLResponse;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigurationSourceTest {
+    private static final long ONE_HOUR = 60 * 60 * 1000L;
+
+    private static File directory;
+    private static LiveUpdateManager manager;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        directory = BenchmarkData.cacheDirectory("source");
+        LocalCache.setCacheDirectory(directory);
+        manager = LiveUpdateManager.getInstance(new Context());
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        BenchmarkData.delete(directory);
+    }
+
+    @After
+    public void tearDown() {
+        WLResourceRequest.clearResponses();
+    }
+
+    private static WLResponse configuration(String value, long expiresAt) {
+        return new WLResponse(200, null, "{\"data\": {\"properties\": {\"x\": \"" + value + "\"}}, \"expiresAt\": \""
+                + BenchmarkData.httpDate(expiresAt) + "\"}");
+    }
+
+    private static Object obtain(String segmentId, boolean useCache, long maxStaleness) {
+        final List<Object> results = new ArrayList<Object>();
+        manager.obtainConfiguration(segmentId, useCache, maxStaleness, new ConfigurationListener() {
+            @Override
+            public void onSuccess(Configuration configuration) {
+                results.add(configuration);
+            }
+
+            @Override
+            public void onFailure(WLFailResponse wlFailResponse) {
+                results.add(wlFailResponse);
+            }
+        });
+        assertEquals(1, results.size());
+        return results.get(0);
+    }
+
+    private static ConfigurationSource source(Object result) {
+        assertTrue(result instanceof Configuration);
+        return ((Configuration) result).getSource();
+    }
+
+    @Test
+    public void fetchedConfigurationReportsNetworkThenCache() {
+        WLResourceRequest.enqueueResponse(configuration("1", System.currentTimeMillis() + ONE_HOUR));
+
+        assertEquals(ConfigurationSource.NETWORK, source(obtain("source-fresh", true, 0)));
+        assertEquals(ConfigurationSource.CACHE, source(obtain("source-fresh", true, 0)));
+    }
+
+    @Test
+    public void staleWhileRevalidateReportsLastKnownGood() {
+        WLResourceRequest.enqueueResponse(configuration("1", System.currentTimeMillis() - 1000L));
+        obtain("source-stale", false, 0);
+        WLResourceRequest.enqueueResponse(configuration("2", System.currentTimeMillis() + ONE_HOUR));
+
+        Object result = obtain("source-stale", true, ONE_HOUR);
+
+        assertEquals(ConfigurationSource.LAST_KNOWN_GOOD, source(result));
+        assertEquals("1", ((Configuration) result).getProperty("x"));
+        assertEquals(ConfigurationSource.CACHE, source(obtain("source-stale", true, ONE_HOUR)));
+    }
+
+    @Test
+    public void unavailableServerReportsLastKnownGood() {
+        WLResourceRequest.enqueueResponse(configuration("1", System.currentTimeMillis() - 1000L));
+        obtain("source-unavailable", false, 0);
+        WLResourceRequest.enqueueResponse(new WLFailResponse(503, "unavailable"));
+
+        assertEquals(ConfigurationSource.LAST_KNOWN_GOOD, source(obtain("source-unavailable", true, 0)));
+    }
+
+    @Test
+    public void serverAnswerIsReportedInsteadOfTheLastKnownGood() {
+        WLResourceRequest.enqueueResponse(configuration("1", System.currentTimeMillis() - 1000L));
+        obtain("source-forbidden", false, 0);
+        WLResourceRequest.enqueueResponse(new WLFailResponse(403, "forbidden"));
+
+        Object result = obtain("source-forbidden", true, 0);
+
+        assertTrue(result instanceof WLFailResponse);
+        assertEquals(403, ((WLFailResponse) result).getStatus());
+    }
+}
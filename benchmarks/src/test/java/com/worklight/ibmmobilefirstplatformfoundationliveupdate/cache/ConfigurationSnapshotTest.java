@@ -0,0 +1,85 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigurationSnapshotTest {
+    private static ConfigurationSnapshot snapshot(String data) {
+        return ConfigurationSnapshot.fromData(new JSONObject("{\"data\": " + data + "}"));
+    }
+
+    @Test
+    public void unchangedContentInAnotherOrderIsEqual() {
+        ConfigurationSnapshot cached = snapshot("{\"features\": {\"a\": true, \"b\": false}, \"properties\": {\"x\": \"1\", \"y\": \"2\"}}");
+        ConfigurationSnapshot fetched = snapshot("{\"properties\": {\"y\": \"2\", \"x\": \"1\"}, \"features\": {\"b\": false, \"a\": true}}");
+
+        assertTrue(cached.contentEquals(fetched));
+        assertTrue(fetched.contentEquals(cached));
+    }
+
+    @Test
+    public void decodedSnapshotEqualsTheOneItWasEncodedFrom() {
+        ConfigurationSnapshot snapshot = snapshot("{\"features\": {\"a\": true, \"b\": \"false\"}, \"properties\": {\"x\": \"1\", \"y\": 2, \"z\": \"1\"}}");
+
+        ConfigurationSnapshot decoded = ConfigurationSnapshot.fromBytes(ByteBuffer.wrap(snapshot.toBytes()));
+
+        assertTrue(snapshot.contentEquals(decoded));
+        assertEquals(2, decoded.getFeatureCount());
+        assertEquals(3, decoded.getPropertyCount());
+    }
+
+    @Test
+    public void toggledFeatureIsAChange() {
+        assertFalse(snapshot("{\"features\": {\"a\": true}}").contentEquals(snapshot("{\"features\": {\"a\": false}}")));
+    }
+
+    @Test
+    public void changedPropertyIsAChange() {
+        assertFalse(snapshot("{\"properties\": {\"x\": \"1\"}}").contentEquals(snapshot("{\"properties\": {\"x\": \"2\"}}")));
+    }
+
+    @Test
+    public void renamedKeyIsAChange() {
+        assertFalse(snapshot("{\"features\": {\"a\": true}}").contentEquals(snapshot("{\"features\": {\"b\": true}}")));
+        assertFalse(snapshot("{\"properties\": {\"x\": \"1\"}}").contentEquals(snapshot("{\"properties\": {\"y\": \"1\"}}")));
+    }
+
+    @Test
+    public void addedOrRemovedKeyIsAChange() {
+        ConfigurationSnapshot snapshot = snapshot("{\"features\": {\"a\": true}, \"properties\": {\"x\": \"1\"}}");
+
+        assertFalse(snapshot.contentEquals(snapshot("{\"features\": {\"a\": true, \"b\": true}, \"properties\": {\"x\": \"1\"}}")));
+        assertFalse(snapshot.contentEquals(snapshot("{\"features\": {\"a\": true}}")));
+        assertFalse(snapshot.contentEquals(null));
+    }
+
+    @Test
+    public void invalidBytesAreRejected() {
+        byte[] bytes = snapshot("{\"features\": {\"a\": true}}").toBytes();
+
+        assertNull(ConfigurationSnapshot.fromBytes(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 0, 1})));
+        assertNull(ConfigurationSnapshot.fromBytes(ByteBuffer.wrap(bytes, 0, bytes.length - 2)));
+    }
+}
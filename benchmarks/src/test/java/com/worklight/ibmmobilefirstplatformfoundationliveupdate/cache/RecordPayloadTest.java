@@ -0,0 +1,101 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache;
+
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.BenchmarkData;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.ConfigurationInstance;
+
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RecordPayloadTest {
+    private static final long ONE_HOUR = 60 * 60 * 1000L;
+
+    private static File directory;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        directory = BenchmarkData.cacheDirectory("payload");
+        CacheFileManager.setCacheDirectory(directory);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        BenchmarkData.delete(directory);
+    }
+
+    private static ConfigurationInstance configuration(String id, String data, String validator) {
+        return new ConfigurationInstance(id, new JSONObject("{\"data\": " + data + "}"),
+                System.currentTimeMillis() + ONE_HOUR, System.currentTimeMillis(), validator);
+    }
+
+    private static ConfigurationInstance read(String id) {
+        return (ConfigurationInstance) CacheFileManager.configuration(id);
+    }
+
+    @Test
+    public void readsThePayloadWhenTheDataIsAskedFor() {
+        ConfigurationInstance saved = configuration("lazy", "{\"features\": {\"a\": true}, \"properties\": {\"x\": 1, \"nested\": {\"y\": [1, 2]}}}", "\"v1\"");
+        CacheFileManager.save(saved);
+
+        ConfigurationInstance configuration = read("lazy");
+
+        assertTrue(configuration.isFeatureEnabled("a"));
+        assertEquals("1", configuration.getProperty("x"));
+        assertTrue(saved.getData().similar(configuration.getData()));
+    }
+
+    @Test
+    public void readsThePayloadAfterAnInPlaceRevalidation() {
+        ConfigurationInstance saved = configuration("revalidated", "{\"properties\": {\"x\": 1}}", "\"v1\"");
+        CacheFileManager.save(saved);
+        ConfigurationInstance configuration = read("revalidated");
+
+        CacheFileManager.updateExpiresAt(saved.revalidated(System.currentTimeMillis() + 2 * ONE_HOUR, System.currentTimeMillis()));
+
+        assertTrue(saved.getData().similar(configuration.getData()));
+    }
+
+    @Test
+    public void rebuildsTheDataFromTheSnapshotWhenTheRecordWasReplaced() {
+        CacheFileManager.save(configuration("replaced", "{\"features\": {\"a\": true}, \"properties\": {\"x\": 1}}", "\"v1\""));
+        ConfigurationInstance configuration = read("replaced");
+
+        CacheFileManager.save(configuration("replaced", "{\"features\": {\"a\": false}, \"properties\": {\"x\": 2}}", "\"v2\""));
+
+        JSONObject data = configuration.getData().getJSONObject(ConfigurationInstance.DATA_KEY);
+        assertEquals(true, data.getJSONObject(ConfigurationInstance.FEATURES_KEY).get("a"));
+        assertEquals("1", data.getJSONObject(ConfigurationInstance.PROPERTIES_KEY).get("x"));
+    }
+
+    @Test
+    public void rebuildsTheDataFromTheSnapshotWhenTheRecordWasDeleted() {
+        CacheFileManager.save(configuration("deleted", "{\"features\": {\"a\": true}}", null));
+        ConfigurationInstance configuration = read("deleted");
+
+        CacheFileManager.delete("deleted");
+
+        JSONObject data = configuration.getData().getJSONObject(ConfigurationInstance.DATA_KEY);
+        assertEquals(true, data.getJSONObject(ConfigurationInstance.FEATURES_KEY).get("a"));
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate;
+
+import com.worklight.common.Logger;
+import com.worklight.wlclient.api.WLFailResponse;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CircuitBreaker - decides whether a configuration request may be sent to the server
+ * </p>
+ * Failures are cached per configuration id for a short time, so callers of a failing id get the
+ * last failure back at once instead of waiting for another request to time out.
+ * Failures that mean the server is unhealthy (no connection, timeouts, throttling, 5xx) also count
+ * toward a shared breaker: after FAILURE_THRESHOLD consecutive ones it opens for an exponentially
+ * growing, jittered backoff, during which every request fails fast. Once the backoff is over a single
+ * trial request is let through; its success closes the breaker and its failure opens it again for longer.
+ *
+ * @since 8.0.0
+ * @see LiveUpdateManager
+ */
+class CircuitBreaker {
+    private static final Logger logger = Logger.getInstance(CircuitBreaker.class.getName());
+
+    private final static long NEGATIVE_CACHE_DURATION = 10 * 1000L;
+    private final static int MAX_NEGATIVE_ENTRIES = 64;
+    private final static int FAILURE_THRESHOLD = 3;
+    private final static long BASE_BACKOFF = 5 * 1000L;
+    private final static long MAX_BACKOFF = 5 * 60 * 1000L;
+    private final static int MAX_BACKOFF_SHIFT = 16;
+
+    private final Map<String, NegativeEntry> failures = new ConcurrentHashMap<String, NegativeEntry>();
+    private final Random random = new Random();
+
+    // Breaker state, guarded by this
+    private int consecutiveFailures;
+    private int openCount;
+    private long openUntil;
+    private boolean isTrialInFlight;
+    private String trialId;
+    private WLFailResponse lastFailure;
+
+    /**
+     * Check whether a request for a configuration may be sent.
+     * When the breaker is half open, the first caller is let through as the trial request.
+     * @param id - the configuration id
+     * @return null if the request may be sent, or else the failure to report to the caller
+     */
+    WLFailResponse acquire(String id) {
+        long now = System.currentTimeMillis();
+        NegativeEntry entry = failures.get(id);
+        if (entry != null) {
+            if (now < entry.until) {
+                return entry.failure;
+            }
+            failures.remove(id);
+        }
+
+        synchronized (this) {
+            if (openUntil == 0) {
+                return null;
+            }
+            if (now < openUntil || isTrialInFlight) {
+                return lastFailure;
+            }
+            logger.debug("acquire: backoff is over, sending a trial request. id = " + id);
+            isTrialInFlight = true;
+            trialId = id;
+            return null;
+        }
+    }
+
+    /**
+     * Record that the server answered a request
+     * @param id - the configuration id
+     */
+    void onSuccess(String id) {
+        failures.remove(id);
+        synchronized (this) {
+            if (openUntil != 0) {
+                logger.debug("onSuccess: server is available again, closing the circuit breaker");
+            }
+            consecutiveFailures = 0;
+            openCount = 0;
+            openUntil = 0;
+            isTrialInFlight = false;
+            trialId = null;
+        }
+    }
+
+    /**
+     * Record a failed request
+     * @param id - the configuration id
+     * @param failure - the failure
+     */
+    void onFailure(String id, WLFailResponse failure) {
+        long now = System.currentTimeMillis();
+        if (failures.size() >= MAX_NEGATIVE_ENTRIES) {
+            removeExpired(now);
+        }
+        failures.put(id, new NegativeEntry(failure, now + NEGATIVE_CACHE_DURATION));
+
+        synchronized (this) {
+            // Only the trial request may decide the state of an open breaker, requests that were already
+            // in flight when it opened report on a server state that is no longer current
+            boolean isTrial = isTrialInFlight && id.equals(trialId);
+            boolean isClosed = openUntil == 0;
+
+            if (!isServerFailure(failure)) {
+                // The server answered, it is only this configuration that failed
+                if (isClosed) {
+                    consecutiveFailures = 0;
+                } else if (isTrial) {
+                    logger.debug("onFailure: server answered the trial request, closing the circuit breaker");
+                    consecutiveFailures = 0;
+                    openCount = 0;
+                    openUntil = 0;
+                    isTrialInFlight = false;
+                    trialId = null;
+                }
+                return;
+            }
+
+            lastFailure = failure;
+            if (!isClosed && !isTrial) {
+                return;
+            }
+            consecutiveFailures++;
+            if (isTrial || consecutiveFailures >= FAILURE_THRESHOLD) {
+                isTrialInFlight = false;
+                trialId = null;
+                consecutiveFailures = 0;
+                openCount++;
+                long backoff = Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(openCount - 1, MAX_BACKOFF_SHIFT));
+                // Equal jitter: half the backoff is fixed, the other half random, so clients do not retry in lockstep
+                long delay = backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+                openUntil = now + delay;
+                logger.debug("onFailure: server is unavailable, opening the circuit breaker. delay = " + delay);
+            }
+        }
+    }
+
+    private void removeExpired(long now) {
+        Iterator<NegativeEntry> iterator = failures.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().until <= now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    static boolean isServerFailure(WLFailResponse failure) {
+        int status = failure.getStatus();
+        return status <= 0 || status == 408 || status == 429 || status >= 500;
+    }
+
+    //NegativeEntry - a cached failure
+    private static class NegativeEntry {
+        final WLFailResponse failure;
+        final long until;
+
+        NegativeEntry(WLFailResponse failure, long until) {
+            this.failure = failure;
+            this.until = until;
+        }
+    }
+}
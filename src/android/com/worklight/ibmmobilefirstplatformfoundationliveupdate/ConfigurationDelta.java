@@ -0,0 +1,159 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate;
+
+import com.worklight.common.Logger;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache.CacheFileManager;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.text.ParseException;
+import java.util.Iterator;
+
+/**
+ * ConfigurationDelta - applies a delta response to a cached configuration
+ * </p>
+ * A delta response (HTTP 226, IM: liveupdate-delta) looks like:
+ * <pre>
+ * {
+ *   "base": "&lt;validator of the cached configuration&gt;",
+ *   "expiresAt": "&lt;HTTP date&gt;",
+ *   "features":   { "added": {...}, "changed": {...}, "removed": [...] },
+ *   "properties": { "added": {...}, "changed": {...}, "removed": [...] }
+ * }
+ * </pre>
+ * A delta is not applicable when it was computed against another base, adds an existing key,
+ * or changes / removes a missing one. The caller then falls back to a full fetch.
+ * The expiresAt of the delta, when present, replaces the one of the cached configuration.
+ *
+ * @since 8.0.0
+ * @see LiveUpdateManager
+ */
+class ConfigurationDelta {
+    private static final Logger logger = Logger.getInstance(ConfigurationDelta.class.getName());
+
+    final static String DELTA_IM = "liveupdate-delta";
+    private final static String BASE_KEY = "base";
+    private final static String ADDED_KEY = "added";
+    private final static String CHANGED_KEY = "changed";
+    private final static String REMOVED_KEY = "removed";
+
+    private ConfigurationDelta() {
+    }
+
+    /**
+     * Get the expiration time carried by a delta
+     * @param delta - the delta response
+     * @return the expiration time in epoch millis, or 0 if the delta has none
+     */
+    static long expiresAt(JSONObject delta) {
+        String expiresAt = delta.optString(ConfigurationInstance.EXPIRES_AT_KEY, null);
+        if (expiresAt == null) {
+            return 0;
+        }
+        try {
+            return CacheFileManager.parseHttpDate(expiresAt);
+        } catch (ParseException e) {
+            logger.error("expiresAt: cannot parse delta expiresAt field. expiresAt = " + expiresAt);
+            return 0;
+        }
+    }
+
+    /**
+     * Apply a delta to a cached configuration
+     * @param base - the cached configuration the delta was requested for
+     * @param delta - the delta response
+     * @param fetchedAt - the time the delta was received in epoch millis
+     * @param expiresAt - the expiration time of the resulting configuration in epoch millis
+     * @param validator - the validator of the resulting configuration
+     * @return the updated configuration, or null if the delta is not applicable
+     */
+    static ConfigurationInstance apply(ConfigurationInstance base, JSONObject delta, long fetchedAt, long expiresAt, String validator) {
+        JSONObject baseJson = base.getData();
+        if (baseJson == null || !base.getValidator().equals(delta.optString(BASE_KEY, null))) {
+            logger.debug("apply: delta base does not match the cached configuration. id = " + base.getId());
+            return null;
+        }
+
+        try {
+            JSONObject json = new JSONObject(baseJson.toString());
+            JSONObject data = json.optJSONObject(ConfigurationInstance.DATA_KEY);
+            if (data == null) {
+                data = new JSONObject();
+                json.put(ConfigurationInstance.DATA_KEY, data);
+            }
+            if (!applySection(data, ConfigurationInstance.FEATURES_KEY, delta.optJSONObject(ConfigurationInstance.FEATURES_KEY))
+                    || !applySection(data, ConfigurationInstance.PROPERTIES_KEY, delta.optJSONObject(ConfigurationInstance.PROPERTIES_KEY))) {
+                logger.debug("apply: delta does not apply to the cached configuration. id = " + base.getId());
+                return null;
+            }
+            if (delta.has(ConfigurationInstance.EXPIRES_AT_KEY)) {
+                json.put(ConfigurationInstance.EXPIRES_AT_KEY, delta.get(ConfigurationInstance.EXPIRES_AT_KEY));
+            }
+            return new ConfigurationInstance(base.getId(), json, expiresAt, fetchedAt, validator);
+        } catch (JSONException e) {
+            logger.error("apply: cannot apply delta. id = " + base.getId(), null, e);
+            return null;
+        }
+    }
+
+    private static boolean applySection(JSONObject data, String sectionKey, JSONObject sectionDelta) throws JSONException {
+        if (sectionDelta == null) {
+            return true;
+        }
+        JSONObject section = data.optJSONObject(sectionKey);
+        if (section == null) {
+            section = new JSONObject();
+            data.put(sectionKey, section);
+        }
+
+        JSONArray removed = sectionDelta.optJSONArray(REMOVED_KEY);
+        if (removed != null) {
+            for (int i = 0; i < removed.length(); i++) {
+                if (section.remove(removed.getString(i)) == null) {
+                    return false;
+                }
+            }
+        }
+
+        JSONObject changed = sectionDelta.optJSONObject(CHANGED_KEY);
+        if (changed != null) {
+            Iterator<String> keys = changed.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (!section.has(key)) {
+                    return false;
+                }
+                section.put(key, changed.get(key));
+            }
+        }
+
+        JSONObject added = sectionDelta.optJSONObject(ADDED_KEY);
+        if (added != null) {
+            Iterator<String> keys = added.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (section.has(key)) {
+                    return false;
+                }
+                section.put(key, added.get(key));
+            }
+        }
+        return true;
+    }
+}
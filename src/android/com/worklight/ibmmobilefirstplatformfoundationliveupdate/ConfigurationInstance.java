@@ -17,12 +17,26 @@ package com.worklight.ibmmobilefirstplatformfoundationliveupdate;
 
 import com.worklight.common.Logger;
 import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.Configuration;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.ConfigurationSource;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache.CacheFileManager;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache.ConfigurationSnapshot;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * ConfigurationInstance - an implementation class for Configuration
+ * </p>
+ * Features and properties are flattened into immutable maps on first access,
+ * so lookups are a single hash probe and a missing key simply returns null.
+ * Typed property values are parsed once and memoized per property.
+ * Configurations read from the cache carry a binary snapshot of their features and properties,
+ * so the JSON payload is only read from disk and parsed when the full data is asked for.
  *
  * @since 8.0.0
  * @author Ishai Borovoy
@@ -34,11 +48,67 @@ public class ConfigurationInstance implements Configuration{
     public static final String FEATURES_KEY = "features";
     public static final String PROPERTIES_KEY = "properties";
     public static final String DATA_KEY = "data";
+    public static final String EXPIRES_AT_KEY = "expiresAt";
 
-    private JSONObject data;
+    private volatile JSONObject data;
+    private volatile CacheFileManager.RecordPayload recordPayload;
+    private volatile ConfigurationSnapshot snapshot;
     private String id;
+    private ConfigurationSource source = ConfigurationSource.CACHE;
+
+    // Cache metadata: expiresAt is 0 when it should be taken from the data, validator is the ETag / Last-Modified value
+    private volatile long expiresAt;
+    private volatile boolean isExpiresAtParsed;
+    private long fetchedAt;
+    private String validator;
+
+    private volatile Map<String, Boolean> features;
+    private volatile Map<String, Property> properties;
 
+    /**
+     * Get the configuration JSON, reading and parsing the cached payload on first access
+     * @return the configuration JSON, or null if the payload cannot be parsed
+     */
     public JSONObject getData() {
+        JSONObject data = this.data;
+        if (data == null && recordPayload != null) {
+            data = parsePayload();
+        }
+        return data;
+    }
+
+    /**
+     * Get the snapshot of the features and properties, building it from the data when the configuration has none
+     * @return the configuration snapshot
+     */
+    public ConfigurationSnapshot getSnapshot() {
+        ConfigurationSnapshot snapshot = this.snapshot;
+        if (snapshot == null) {
+            snapshot = ConfigurationSnapshot.fromData(getData());
+            this.snapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    private synchronized JSONObject parsePayload() {
+        CacheFileManager.RecordPayload recordPayload = this.recordPayload;
+        if (data == null && recordPayload != null) {
+            String payload = recordPayload.read();
+            if (payload != null) {
+                try {
+                    long parseStart = System.nanoTime();
+                    data = new JSONObject(payload);
+                    LiveUpdateMetrics.getInstance().record(LiveUpdateMetrics.Stage.JSON_PARSE, parseStart);
+                } catch (JSONException e) {
+                    logger.error("parsePayload: cannot read payload to JSONObject. id = " + id, null, e);
+                }
+            } else {
+                // The record was replaced or evicted since this configuration was read, rebuild the data its lookups answer from
+                logger.error("parsePayload: cached payload is gone, rebuilding the data from the snapshot. id = " + id);
+                data = snapshot.toData();
+            }
+            this.recordPayload = null;
+        }
         return data;
     }
 
@@ -46,37 +116,255 @@ public class ConfigurationInstance implements Configuration{
         return id;
     }
 
+    /**
+     * Get the expiration time of this configuration.
+     * When it was not given explicitly, the expiresAt field of the data is parsed once and memoized.
+     * @return the expiration time in epoch millis, or 0 if it cannot be determined
+     */
+    public long getExpiresAt() {
+        if (expiresAt == 0 && !isExpiresAtParsed) {
+            JSONObject data = getData();
+            String expiresAtValue = data != null ? data.optString(EXPIRES_AT_KEY, null) : null;
+            if (expiresAtValue != null) {
+                try {
+                    expiresAt = CacheFileManager.parseHttpDate(expiresAtValue);
+                } catch (ParseException e) {
+                    logger.error("getExpiresAt: cannot parse expiresAt field. expiresAt = " + expiresAtValue);
+                }
+            } else {
+                logger.error("getExpiresAt: cannot get expiresAt field");
+            }
+            isExpiresAtParsed = true;
+        }
+        return expiresAt;
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public String getValidator() {
+        return validator;
+    }
+
     public ConfigurationInstance(String id, JSONObject data) {
         this.id = id;
         this.data = data;
     }
 
+    public ConfigurationInstance(String id, JSONObject data, long expiresAt, long fetchedAt, String validator) {
+        this(id, data);
+        this.expiresAt = expiresAt;
+        this.fetchedAt = fetchedAt;
+        this.validator = validator;
+    }
+
+    /**
+     * Create a configuration from a cached record, whose payload is read and parsed lazily
+     * @param id - the configuration id
+     * @param recordPayload - the location of the configuration JSON text in the record
+     * @param snapshot - the features and properties snapshot
+     */
+    public ConfigurationInstance(String id, CacheFileManager.RecordPayload recordPayload, ConfigurationSnapshot snapshot, long expiresAt, long fetchedAt, String validator) {
+        this(id, null, expiresAt, fetchedAt, validator);
+        this.recordPayload = recordPayload;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Create a copy of this configuration with a new expiration time, sharing its data and lookup index
+     * @param expiresAt - the new expiration time in epoch millis
+     * @param fetchedAt - the time the configuration was revalidated in epoch millis
+     * @return the revalidated configuration
+     */
+    public ConfigurationInstance revalidated(long expiresAt, long fetchedAt) {
+        return copy(expiresAt, fetchedAt, source);
+    }
+
+    /**
+     * Create a copy of this configuration reporting another source, sharing its data and lookup index
+     * @param source - the source of the copy
+     * @return this configuration if it already reports the source, or else the copy
+     */
+    public ConfigurationInstance withSource(ConfigurationSource source) {
+        return this.source == source ? this : copy(expiresAt, fetchedAt, source);
+    }
+
+    private ConfigurationInstance copy(long expiresAt, long fetchedAt, ConfigurationSource source) {
+        // recordPayload is cleared only after data is set, so reading it first never misses both
+        CacheFileManager.RecordPayload recordPayload = this.recordPayload;
+        ConfigurationInstance configuration = new ConfigurationInstance(id, data, expiresAt, fetchedAt, validator);
+        if (configuration.data == null) {
+            configuration.recordPayload = recordPayload;
+        }
+        configuration.snapshot = snapshot;
+        configuration.source = source;
+        // properties is published last, so once it is set features is set as well
+        Map<String, Property> properties = this.properties;
+        if (properties != null) {
+            configuration.features = this.features;
+            configuration.properties = properties;
+        }
+        return configuration;
+    }
+
+    @Override
+    public ConfigurationSource getSource() {
+        return source;
+    }
+
     @Override
     public Boolean isFeatureEnabled(String featureId) {
-        Boolean isFeatureEnabled = null;
-        try {
-            isFeatureEnabled =  this.data.getJSONObject(DATA_KEY).getJSONObject(FEATURES_KEY).getBoolean(featureId);
-        } catch (JSONException e) {
-            logger.error("isFeatureEnabled: Cannot get feature " + featureId);
+        Map<String, Boolean> features = this.features;
+        if (features == null) {
+            buildIndex();
+            features = this.features;
         }
-        return isFeatureEnabled;
+        return features.get(featureId);
     }
 
     @Override
     public String getProperty(String propertyId) {
-        String property = null;
-        try {
-            property =  this.data.getJSONObject(DATA_KEY).getJSONObject(PROPERTIES_KEY).getString(propertyId);
-        } catch (JSONException e) {
-            logger.error("getProperty: Cannot get property " + propertyId);
+        Property property = property(propertyId);
+        return property != null ? property.value : null;
+    }
+
+    @Override
+    public boolean isFeatureEnabled(String featureId, boolean defaultValue) {
+        Boolean isFeatureEnabled = isFeatureEnabled(featureId);
+        return isFeatureEnabled != null ? isFeatureEnabled : defaultValue;
+    }
+
+    @Override
+    public int getIntProperty(String propertyId, int defaultValue) {
+        Property property = property(propertyId);
+        if (property == null || !property.parseLong()) {
+            return defaultValue;
+        }
+        long value = property.longValue;
+        return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? (int) value : defaultValue;
+    }
+
+    @Override
+    public long getLongProperty(String propertyId, long defaultValue) {
+        Property property = property(propertyId);
+        return property != null && property.parseLong() ? property.longValue : defaultValue;
+    }
+
+    @Override
+    public double getDoubleProperty(String propertyId, double defaultValue) {
+        Property property = property(propertyId);
+        return property != null && property.parseDouble() ? property.doubleValue : defaultValue;
+    }
+
+    @Override
+    public boolean getBooleanProperty(String propertyId, boolean defaultValue) {
+        Property property = property(propertyId);
+        return property != null && property.parseBoolean() ? property.booleanValue : defaultValue;
+    }
+
+    private Property property(String propertyId) {
+        Map<String, Property> properties = this.properties;
+        if (properties == null) {
+            buildIndex();
+            properties = this.properties;
+        }
+        return properties.get(propertyId);
+    }
+
+    private synchronized void buildIndex() {
+        if (this.properties != null) {
+            return;
+        }
+
+        ConfigurationSnapshot snapshot = getSnapshot();
+        if (snapshot.getFeatureCount() == 0 && snapshot.getPropertyCount() == 0) {
+            logger.debug("buildIndex: configuration has no features or properties. id = " + id);
+        }
+
+        Map<String, Boolean> features = new HashMap<String, Boolean>(capacityFor(snapshot.getFeatureCount()));
+        for (int i = 0; i < snapshot.getFeatureCount(); i++) {
+            features.put(snapshot.getFeatureId(i), snapshot.isFeatureEnabled(i));
+        }
+
+        Map<String, Property> properties = new HashMap<String, Property>(capacityFor(snapshot.getPropertyCount()));
+        for (int i = 0; i < snapshot.getPropertyCount(); i++) {
+            properties.put(snapshot.getPropertyId(i), new Property(snapshot.getPropertyValue(i)));
+        }
+
+        this.features = Collections.unmodifiableMap(features);
+        this.properties = Collections.unmodifiableMap(properties);
+    }
+
+    private static int capacityFor(int count) {
+        return (int) (count / 0.75f) + 1;
+    }
+
+    /**
+     * Property - a property value with its memoized typed parsings
+     */
+    private static class Property {
+        private final static byte UNPARSED = 0;
+        private final static byte VALID = 1;
+        private final static byte INVALID = 2;
+
+        final String value;
+
+        long longValue;
+        double doubleValue;
+        boolean booleanValue;
+
+        // Each state is written after its value, so a reader seeing VALID also sees the value
+        private volatile byte longState = UNPARSED;
+        private volatile byte doubleState = UNPARSED;
+        private volatile byte booleanState = UNPARSED;
+
+        Property(String value) {
+            this.value = value;
+        }
+
+        boolean parseLong() {
+            if (longState == UNPARSED) {
+                try {
+                    longValue = Long.parseLong(value.trim());
+                    longState = VALID;
+                } catch (NumberFormatException e) {
+                    longState = INVALID;
+                }
+            }
+            return longState == VALID;
+        }
+
+        boolean parseDouble() {
+            if (doubleState == UNPARSED) {
+                try {
+                    doubleValue = Double.parseDouble(value.trim());
+                    doubleState = VALID;
+                } catch (NumberFormatException e) {
+                    doubleState = INVALID;
+                }
+            }
+            return doubleState == VALID;
+        }
+
+        boolean parseBoolean() {
+            if (booleanState == UNPARSED) {
+                String trimmed = value.trim();
+                if ("true".equalsIgnoreCase(trimmed) || "false".equalsIgnoreCase(trimmed)) {
+                    booleanValue = Boolean.parseBoolean(trimmed);
+                    booleanState = VALID;
+                } else {
+                    booleanState = INVALID;
+                }
+            }
+            return booleanState == VALID;
         }
-        return property;
     }
 
     @Override
     public String toString() {
         return "ConfigurationInstance{" +
-                "data=" + data +
+                "data=" + getData() +
                 ", id='" + id + '\'' +
                 '}';
     }
@@ -88,12 +376,15 @@ public class ConfigurationInstance implements Configuration{
 
         ConfigurationInstance that = (ConfigurationInstance) o;
 
-        if (data != null ? !data.equals(that.data) : that.data != null) return false;
+        JSONObject data = getData();
+        JSONObject thatData = that.getData();
+        if (data != null ? !data.equals(thatData) : thatData != null) return false;
         return id != null ? id.equals(that.id) : that.id == null;
     }
 
     @Override
     public int hashCode() {
+        JSONObject data = getData();
         int result = data != null ? data.hashCode() : 0;
         result = 31 * result + (id != null ? id.hashCode() : 0);
         return result;
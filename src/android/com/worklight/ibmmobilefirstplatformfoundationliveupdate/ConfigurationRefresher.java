@@ -0,0 +1,265 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate;
+
+import com.worklight.common.Logger;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.Configuration;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.ConfigurationListener;
+import com.worklight.wlclient.api.WLFailResponse;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConfigurationRefresher
+ * </p>
+ * Keeps a registry of recently used configurations and refreshes them from the server shortly before they expire,
+ * so foreground reads hit a fresh cache. Due refreshes are collected on a single scheduler thread at a fixed tick,
+ * jittered so they do not all fire at once, and limited to a few concurrent server requests.
+ * Configurations with change subscribers are kept refreshed for as long as they are subscribed,
+ * the other recently used ones only while refreshing all of them is enabled.
+ *
+ * @see LiveUpdateManager#setBackgroundRefreshEnabled(boolean)
+ */
+class ConfigurationRefresher {
+    private static final Logger logger = Logger.getInstance(ConfigurationRefresher.class.getName());
+
+    private final static int MAX_KNOWN_CONFIGURATIONS = 32;
+    private final static int MAX_CONCURRENT_REFRESHES = 2;
+    private final static long TICK_MILLIS = 15 * 1000L;
+    private final static long REFRESH_LEAD_MILLIS = 60 * 1000L;
+    private final static long REFRESH_JITTER_MILLIS = 30 * 1000L;
+    private final static long MIN_REFRESH_DELAY_MILLIS = 30 * 1000L;
+    private final static long IDLE_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /**
+     * RefreshAction - sends the refresh request for a known configuration
+     */
+    interface RefreshAction {
+        void refresh(String id, URI url, Map<String,String> params, ConfigurationListener configurationListener);
+    }
+
+    private final RefreshAction refreshAction;
+    private final ConcurrentHashMap<String, KnownConfiguration> knownConfigurations = new ConcurrentHashMap<String, KnownConfiguration>();
+    private final Semaphore refreshPermits = new Semaphore(MAX_CONCURRENT_REFRESHES);
+    private final Random random = new Random();
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> tick;
+    private volatile boolean isRefreshAllEnabled;
+
+    ConfigurationRefresher(RefreshAction refreshAction) {
+        this.refreshAction = refreshAction;
+    }
+
+    synchronized void start() {
+        if (tick != null) {
+            return;
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "liveupdate-refresher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        logger.debug("start: background refresh started");
+        tick = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refreshDue();
+            }
+        }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() {
+        if (tick != null) {
+            logger.debug("stop: background refresh stopped");
+            tick.cancel(false);
+            tick = null;
+        }
+    }
+
+    synchronized boolean isStarted() {
+        return tick != null;
+    }
+
+    /**
+     * @param enabled - true to refresh every recently used configuration, false to refresh only the subscribed ones
+     */
+    void setRefreshAllEnabled(boolean enabled) {
+        isRefreshAllEnabled = enabled;
+    }
+
+    /**
+     * Record that a configuration was used, and when it expires
+     * @param expiresAt - the expiration time in epoch millis, or 0 if unknown
+     */
+    void recordUse(String id, URI url, Map<String,String> params, long expiresAt) {
+        KnownConfiguration knownConfiguration = knownConfigurations.get(id);
+        if (knownConfiguration == null) {
+            knownConfiguration = new KnownConfiguration(url, params);
+            KnownConfiguration existing = knownConfigurations.putIfAbsent(id, knownConfiguration);
+            if (existing != null) {
+                knownConfiguration = existing;
+            } else {
+                trim();
+            }
+        }
+        knownConfiguration.lastUsed = System.currentTimeMillis();
+        if (expiresAt > 0 && expiresAt != knownConfiguration.expiresAt) {
+            knownConfiguration.expiresAt = expiresAt;
+            scheduleRefresh(knownConfiguration);
+        }
+    }
+
+    /**
+     * Schedule the next refresh shortly before the configuration expires, but never before half of its
+     * remaining time to live, so short lived configurations are not refreshed on every tick
+     */
+    private void scheduleRefresh(KnownConfiguration knownConfiguration) {
+        long expiresAt = knownConfiguration.expiresAt;
+        if (expiresAt <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long timeToLive = Math.max(expiresAt - now, 0);
+        long earliest = now + Math.max(timeToLive / 2, MIN_REFRESH_DELAY_MILLIS);
+        knownConfiguration.refreshAt = Math.max(earliest, expiresAt - REFRESH_LEAD_MILLIS - (long) (random.nextDouble() * REFRESH_JITTER_MILLIS));
+    }
+
+    /**
+     * Keep a configuration known while it has subscribers, however long ago it was last used
+     * @param expiresAt - the expiration time in epoch millis, or 0 if unknown
+     * @param isSubscribed - true while the configuration has subscribers
+     */
+    void recordSubscription(String id, URI url, Map<String,String> params, long expiresAt, boolean isSubscribed) {
+        if (isSubscribed) {
+            recordUse(id, url, params, expiresAt);
+        }
+        KnownConfiguration knownConfiguration = knownConfigurations.get(id);
+        if (knownConfiguration != null) {
+            knownConfiguration.isSubscribed = isSubscribed;
+        }
+    }
+
+    /**
+     * Record a new expiration time for a configuration that is already known, for example after it was refreshed
+     */
+    void recordExpiration(String id, long expiresAt) {
+        KnownConfiguration knownConfiguration = knownConfigurations.get(id);
+        if (knownConfiguration != null) {
+            recordUse(id, knownConfiguration.url, knownConfiguration.params, expiresAt);
+        }
+    }
+
+    private void refreshDue() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, KnownConfiguration> entry : knownConfigurations.entrySet()) {
+            final String id = entry.getKey();
+            final KnownConfiguration knownConfiguration = entry.getValue();
+
+            if (!knownConfiguration.isSubscribed && now - knownConfiguration.lastUsed > IDLE_MILLIS) {
+                knownConfigurations.remove(id, knownConfiguration);
+                continue;
+            }
+            if (!knownConfiguration.isSubscribed && !isRefreshAllEnabled) {
+                continue;
+            }
+            if (knownConfiguration.isRefreshing || knownConfiguration.refreshAt <= 0 || now < knownConfiguration.refreshAt) {
+                continue;
+            }
+            // The remaining due configurations are picked up by the next tick
+            if (!refreshPermits.tryAcquire()) {
+                return;
+            }
+
+            logger.trace("refreshDue: refreshing configuration. id = " + id);
+            knownConfiguration.isRefreshing = true;
+            try {
+                refreshAction.refresh(id, knownConfiguration.url, knownConfiguration.params, new ConfigurationListener() {
+                    @Override
+                    public void onSuccess(Configuration configuration) {
+                        // The new expiration, if any, was already recorded; an unchanged one must still move refreshAt forward
+                        scheduleRefresh(knownConfiguration);
+                        knownConfiguration.isRefreshing = false;
+                        refreshPermits.release();
+                    }
+
+                    @Override
+                    public void onFailure(WLFailResponse wlFailResponse) {
+                        logger.error("refreshDue: cannot refresh configuration. id = " + id + ", error = " + wlFailResponse.getErrorMsg());
+                        // Retry on the next jitter window rather than on every tick
+                        knownConfiguration.refreshAt = System.currentTimeMillis() + REFRESH_LEAD_MILLIS / 2 + (long) (random.nextDouble() * REFRESH_JITTER_MILLIS);
+                        knownConfiguration.isRefreshing = false;
+                        refreshPermits.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                logger.error("refreshDue: cannot send refresh request. id = " + id, null, e);
+                knownConfiguration.isRefreshing = false;
+                refreshPermits.release();
+            }
+        }
+    }
+
+    // Keeps only the most recently used configurations, and the subscribed ones
+    private synchronized void trim() {
+        while (knownConfigurations.size() > MAX_KNOWN_CONFIGURATIONS) {
+            Map.Entry<String, KnownConfiguration> eldest = null;
+            for (Map.Entry<String, KnownConfiguration> candidate : knownConfigurations.entrySet()) {
+                if (candidate.getValue().isSubscribed) {
+                    continue;
+                }
+                if (eldest == null || candidate.getValue().lastUsed < eldest.getValue().lastUsed) {
+                    eldest = candidate;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            knownConfigurations.remove(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private static class KnownConfiguration {
+        final URI url;
+        final Map<String,String> params;
+        volatile long lastUsed;
+        volatile long expiresAt;
+        volatile long refreshAt;
+        volatile boolean isRefreshing;
+        volatile boolean isSubscribed;
+
+        KnownConfiguration(URI url, Map<String,String> params) {
+            this.url = url;
+            this.params = params != null ? new HashMap<String,String>(params) : null;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+}
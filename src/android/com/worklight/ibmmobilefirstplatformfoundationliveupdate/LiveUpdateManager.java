@@ -20,7 +20,11 @@ import android.webkit.URLUtil;
 
 import com.worklight.common.Logger;
 import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.Configuration;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.ConfigurationChangeListener;
 import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.ConfigurationListener;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.ConfigurationSource;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.ConfigurationsListener;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache.CacheFileManager;
 import com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache.LocalCache;
 import com.worklight.wlclient.api.WLClient;
 import com.worklight.wlclient.api.WLFailResponse;
@@ -28,11 +32,31 @@ import com.worklight.wlclient.api.WLResourceRequest;
 import com.worklight.wlclient.api.WLResponse;
 import com.worklight.wlclient.api.WLResponseListener;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URL;
+import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * LiveUpdateManager
@@ -47,10 +71,52 @@ public class LiveUpdateManager {
 
     private static LiveUpdateManager instance = null;
     private final static String LIVEUPDATE_CLIENT_SCOPE = "liveupdate.mobileclient";
+    private final static long DEFAULT_MAX_STALENESS = 24 * 60 * 60 * 1000L;
+    final static long MANAGER_STALENESS = -1;
+    private final static long DEFAULT_REVALIDATED_TTL = 5 * 60 * 1000L;
+    private final static int HTTP_NOT_MODIFIED = 304;
+    private final static String HEADER_ETAG = "ETag";
+    private final static String HEADER_LAST_MODIFIED = "Last-Modified";
+    private final static String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private final static String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private final static String HEADER_A_IM = "A-IM";
+    private final static String HEADER_IM = "IM";
+    private final static int HTTP_IM_USED = 226;
+    private final static String HEADER_CACHE_CONTROL = "Cache-Control";
+    private final static String HEADER_EXPIRES = "Expires";
+    private final static String MAX_AGE_DIRECTIVE = "max-age=";
+    // Segment ids are URL encoded, so they never contain '&' and cannot collide with params ids
+    private final static String PARAMS_ID_PREFIX = "&params";
+    private final static int MAX_PARAMS_ID_LENGTH = 128;
     private String SERVICE_URL;
 
+    private volatile boolean staleWhileRevalidate = false;
+    private volatile long maxStaleness = DEFAULT_MAX_STALENESS;
+
+    // Params ids whose legacy cache folder was already checked for migration
+    private final Set<String> migratedParamsIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final ConfigurationRefresher refresher = new ConfigurationRefresher(new ConfigurationRefresher.RefreshAction() {
+        @Override
+        public void refresh(String id, URI url, Map<String, String> params, ConfigurationListener configurationListener) {
+            sendConfigRequest(id, url, params, configurationListener);
+        }
+    });
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    // Change listeners by configuration id, the map is also the lock of isBackgroundRefreshEnabled
+    private final Map<String, List<ConfigurationChangeListener>> subscriptions = new ConcurrentHashMap<String, List<ConfigurationChangeListener>>();
+    private volatile boolean isBackgroundRefreshEnabled;
+
+    private final Context context;
+    private volatile JSONObject defaultConfiguration;
+
+    // Listeners waiting for an outstanding server request, by configuration id
+    private final Map<String, List<ConfigurationListener>> inFlightRequests = new HashMap<String, List<ConfigurationListener>>();
 
     private static final Logger logger = Logger.getInstance(LiveUpdateManager.class.getName());
+    private final LiveUpdateMetrics metrics = LiveUpdateMetrics.getInstance();
     /**
      * getInstance
      *
@@ -65,6 +131,7 @@ public class LiveUpdateManager {
     }
 
     private LiveUpdateManager(Context context) {
+        this.context = context;
         try {
             WLClient client = null;
             // Get the applicationId and backend route from core
@@ -100,6 +167,226 @@ public class LiveUpdateManager {
         }
     }
 
+    /**
+     * setStaleWhileRevalidate - serve expired cached configurations while refreshing them in the background
+     * </p>
+     * When enabled, a cached configuration that expired no longer than maxStaleness ago is returned immediately,
+     * and a request to the server refreshes the cache for the next call.
+     * Disabled by default.
+     *
+     * @param enabled - true to enable stale-while-revalidate
+     * @param maxStaleness - how long after its expiration (in millis) a configuration may still be served
+     */
+    public void setStaleWhileRevalidate(boolean enabled, long maxStaleness) {
+        logger.debug("setStaleWhileRevalidate: enabled = " + enabled + ", maxStaleness = " + maxStaleness);
+        this.maxStaleness = maxStaleness;
+        this.staleWhileRevalidate = enabled;
+    }
+
+    /**
+     * setBackgroundRefreshEnabled - refresh recently used configurations in the background before they expire
+     * </p>
+     * Disabled by default.
+     *
+     * @param enabled - true to enable background refresh
+     */
+    public void setBackgroundRefreshEnabled(boolean enabled) {
+        logger.debug("setBackgroundRefreshEnabled: enabled = " + enabled);
+        synchronized (subscriptions) {
+            isBackgroundRefreshEnabled = enabled;
+            refresher.setRefreshAllEnabled(enabled);
+            if (enabled) {
+                refresher.start();
+            } else if (subscriptions.isEmpty()) {
+                refresher.stop();
+            }
+        }
+    }
+
+    public boolean isBackgroundRefreshEnabled() {
+        return isBackgroundRefreshEnabled;
+    }
+
+    /**
+     * subscribe - get notified when a segment configuration changes, instead of polling the server
+     * </p>
+     * While a configuration has subscribers it is refreshed in the background shortly before it expires,
+     * and listeners are called whenever a configuration obtained from the server (by the background refresh or any other call)
+     * has different features or properties than the cached one. Use obtainConfiguration to get the current configuration.
+     *
+     * @param segmentId - the segment id
+     * @param changeListener - the listener called with each new configuration
+     */
+    public void subscribe (String segmentId, ConfigurationChangeListener changeListener) {
+        subscribe(segmentId, URI.create(SERVICE_URL + "/" + segmentId), null, changeListener);
+    }
+
+    /**
+     * subscribe - get notified when a params based configuration changes
+     *
+     * @param params - the params used to obtain the configuration
+     * @param changeListener - the listener called with each new configuration
+     * @see #subscribe(String, ConfigurationChangeListener)
+     */
+    public void subscribe (Map<String,String> params, ConfigurationChangeListener changeListener) {
+        subscribe(buildIDFromParams(params), URI.create(SERVICE_URL), params, changeListener);
+    }
+
+    /**
+     * unsubscribe - stop notifying a listener of segment configuration changes
+     *
+     * @param segmentId - the segment id
+     * @param changeListener - the subscribed listener
+     */
+    public void unsubscribe (String segmentId, ConfigurationChangeListener changeListener) {
+        unsubscribe(segmentId, URI.create(SERVICE_URL + "/" + segmentId), null, changeListener);
+    }
+
+    /**
+     * unsubscribe - stop notifying a listener of params based configuration changes
+     *
+     * @param params - the params used to subscribe
+     * @param changeListener - the subscribed listener
+     */
+    public void unsubscribe (Map<String,String> params, ConfigurationChangeListener changeListener) {
+        unsubscribe(buildIDFromParams(params), URI.create(SERVICE_URL), params, changeListener);
+    }
+
+    private void subscribe (String id, URI url, Map<String,String> params, ConfigurationChangeListener changeListener) {
+        logger.debug("subscribe: id = " + id);
+        synchronized (subscriptions) {
+            List<ConfigurationChangeListener> listeners = subscriptions.get(id);
+            if (listeners == null) {
+                listeners = new CopyOnWriteArrayList<ConfigurationChangeListener>();
+                subscriptions.put(id, listeners);
+            }
+            listeners.add(changeListener);
+            refresher.start();
+        }
+
+        // The refresher needs the expiration time to schedule the refresh, fetch the configuration if it is not known yet
+        Configuration cachedConfiguration = LocalCache.getAnyConfiguration(id);
+        refresher.recordSubscription(id, url, params, cachedConfiguration != null ? LocalCache.getExpiresAt(cachedConfiguration) : 0, true);
+        if (cachedConfiguration == null || LocalCache.isExpired(cachedConfiguration)) {
+            sendConfigRequest(id, url, params, revalidateListener);
+        }
+    }
+
+    private void unsubscribe (String id, URI url, Map<String,String> params, ConfigurationChangeListener changeListener) {
+        logger.debug("unsubscribe: id = " + id);
+        synchronized (subscriptions) {
+            List<ConfigurationChangeListener> listeners = subscriptions.get(id);
+            if (listeners == null || !listeners.remove(changeListener)) {
+                return;
+            }
+            if (listeners.isEmpty()) {
+                subscriptions.remove(id);
+                refresher.recordSubscription(id, url, params, 0, false);
+            }
+            if (subscriptions.isEmpty() && !isBackgroundRefreshEnabled) {
+                refresher.stop();
+            }
+        }
+    }
+
+    private void notifyChange(String id, Configuration configuration) {
+        List<ConfigurationChangeListener> listeners = subscriptions.get(id);
+        if (listeners == null) {
+            return;
+        }
+        logger.debug("notifyChange: configuration changed. id = " + id + ", subscribers = " + listeners.size());
+        for (ConfigurationChangeListener listener : listeners) {
+            try {
+                listener.onChange(configuration);
+            } catch (RuntimeException e) {
+                logger.error("notifyChange: configuration change listener failed. id = " + id, null, e);
+            }
+        }
+    }
+
+    /**
+     * setDefaultConfiguration - the configuration served when a configuration is neither cached nor available from the server
+     * </p>
+     * For example, on a fresh install without network. Served configurations report {@link ConfigurationSource#BUNDLED_DEFAULT}.
+     *
+     * @param json - the default configuration, either {"features": {...}, "properties": {...}} or a server response {"data": {...}}, or null to remove it
+     */
+    public void setDefaultConfiguration(JSONObject json) {
+        if (json != null && !json.has(ConfigurationInstance.DATA_KEY)) {
+            JSONObject wrapper = new JSONObject();
+            try {
+                wrapper.put(ConfigurationInstance.DATA_KEY, json);
+            } catch (JSONException e) {
+                logger.error("setDefaultConfiguration: cannot set default configuration", null, e);
+                return;
+            }
+            json = wrapper;
+        }
+        defaultConfiguration = json;
+    }
+
+    /**
+     * loadDefaultConfiguration - load the default configuration from an app asset
+     *
+     * @param assetPath - the asset path, for example "www/liveupdate-default.json"
+     * @return true if the default configuration was loaded
+     * @see #setDefaultConfiguration(JSONObject)
+     */
+    public boolean loadDefaultConfiguration(String assetPath) {
+        InputStream in = null;
+        try {
+            in = context.getAssets().open(assetPath);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+            setDefaultConfiguration(new JSONObject(new String(bytes.toByteArray(), "UTF-8")));
+            logger.debug("loadDefaultConfiguration: loaded default configuration. assetPath = " + assetPath);
+            return true;
+        } catch (IOException e) {
+            logger.error("loadDefaultConfiguration: cannot read asset. assetPath = " + assetPath, null, e);
+        } catch (JSONException e) {
+            logger.error("loadDefaultConfiguration: cannot read asset to JSONObject. assetPath = " + assetPath, null, e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    logger.error("loadDefaultConfiguration: cannot close asset. assetPath = " + assetPath, null, e);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * getMetrics - the cache and latency metrics of the plugin
+     * </p>
+     * Counts cache hits, misses and expirations, bytes read and written, and the latency of each stage
+     * (plugin bridge, cache lock, disk, JSON parsing and network).
+     *
+     * @return the metrics registry
+     */
+    public LiveUpdateMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * preloadConfiguration - loads a cached configuration from disk into memory, without contacting the server
+     * </p>
+     * Expired configurations are loaded too, so they can be served by stale-while-revalidate or revalidated.
+     *
+     * @param segmentId - the segment id
+     * @return true if the configuration was cached
+     */
+    public boolean preloadConfiguration (String segmentId) {
+        boolean isCached = LocalCache.getAnyConfiguration(segmentId) != null;
+        logger.debug("preloadConfiguration: segment = " + segmentId + ", cached = " + isCached);
+        return isCached;
+    }
+
     /**
      * obtainConfiguration - obtains a configuration from server / cache by a segment id
      * </p>
@@ -135,7 +422,7 @@ public class LiveUpdateManager {
 
 
         logger.debug("obtainConfiguration: useCache = " + useCache + ", url = " + url);
-        this.obtainConfiguration("all", url, null, useCache, configurationListener);
+        this.obtainConfiguration("all", url, null, useCache, MANAGER_STALENESS, configurationListener);
     }
 
     /**
@@ -145,11 +432,15 @@ public class LiveUpdateManager {
      * @param configurationListener - the configuration listener for receiving the configuration
      */
     public void obtainConfiguration (String segmentId, boolean useCache, ConfigurationListener configurationListener) {
+        this.obtainConfiguration(segmentId, useCache, MANAGER_STALENESS, configurationListener);
+    }
+
+    void obtainConfiguration (String segmentId, boolean useCache, long maxStaleness, ConfigurationListener configurationListener) {
         URI url = URI.create(SERVICE_URL + "/" + segmentId);
 
 
         logger.debug("obtainConfiguration: segment = " + segmentId + ", useCache = " + useCache + ", url = " + url);
-        this.obtainConfiguration(segmentId, url, null, useCache, configurationListener);
+        this.obtainConfiguration(segmentId, url, null, useCache, maxStaleness, configurationListener);
     }
 
     /**
@@ -159,27 +450,167 @@ public class LiveUpdateManager {
      * @param configurationListener - the configuration listener for receiving the configuration
      */
     public void obtainConfiguration (Map<String,String> params, boolean useCache, ConfigurationListener configurationListener) {
+        this.obtainConfiguration(params, useCache, MANAGER_STALENESS, configurationListener);
+    }
+
+    void obtainConfiguration (Map<String,String> params, boolean useCache, long maxStaleness, ConfigurationListener configurationListener) {
         URI url = URI.create(SERVICE_URL);
         String id = buildIDFromParams(params);
 
         logger.debug("obtainConfiguration: params = " + params + ", useCache = " + useCache + ", url = " + url);
-        this.obtainConfiguration(id, url, params, useCache, configurationListener);
+        this.obtainConfiguration(id, url, params, useCache, maxStaleness, configurationListener);
+    }
+
+
+    /**
+     * obtainConfigurations - obtains several configurations from server / cache in one call
+     * </p>
+     * Requests for the same configuration are made once, and requests that need the server are sent in parallel.
+     *
+     * @param segmentIds - the segment ids, may be null
+     * @param paramsList - the params of each params based configuration, may be null
+     * @param useCache - true to use cache, false to always obtain configurations from server
+     * @param configurationsListener - the listener receiving all the configurations, segment ids first, then params
+     */
+    public void obtainConfigurations (List<String> segmentIds, List<Map<String,String>> paramsList, boolean useCache, ConfigurationsListener configurationsListener) {
+        this.obtainConfigurations(segmentIds, paramsList, useCache, MANAGER_STALENESS, configurationsListener);
+    }
+
+    void obtainConfigurations (List<String> segmentIds, List<Map<String,String>> paramsList, boolean useCache, long maxStaleness, final ConfigurationsListener configurationsListener) {
+        List<String> ids = new ArrayList<String>();
+        List<URI> urls = new ArrayList<URI>();
+        List<Map<String,String>> requestParams = new ArrayList<Map<String,String>>();
+        if (segmentIds != null) {
+            for (String segmentId : segmentIds) {
+                ids.add(segmentId);
+                urls.add(URI.create(SERVICE_URL + "/" + segmentId));
+                requestParams.add(null);
+            }
+        }
+        if (paramsList != null) {
+            for (Map<String,String> params : paramsList) {
+                ids.add(buildIDFromParams(params));
+                urls.add(URI.create(SERVICE_URL));
+                requestParams.add(params);
+            }
+        }
+
+        final int count = ids.size();
+        final Configuration[] configurations = new Configuration[count];
+        final WLFailResponse[] failures = new WLFailResponse[count];
+
+        // Positions of each distinct configuration id in the request lists
+        final Map<String, List<Integer>> positions = new LinkedHashMap<String, List<Integer>>();
+        for (int i = 0; i < count; i++) {
+            List<Integer> idPositions = positions.get(ids.get(i));
+            if (idPositions == null) {
+                idPositions = new ArrayList<Integer>();
+                positions.put(ids.get(i), idPositions);
+            }
+            idPositions.add(i);
+        }
+
+        logger.debug("obtainConfigurations: requests = " + count + ", distinct = " + positions.size() + ", useCache = " + useCache);
+        if (positions.isEmpty()) {
+            configurationsListener.onComplete(new ArrayList<Configuration>(), new ArrayList<WLFailResponse>());
+            return;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(positions.size());
+        for (final Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+            int first = entry.getValue().get(0);
+            this.obtainConfiguration(entry.getKey(), urls.get(first), requestParams.get(first), useCache, maxStaleness, new ConfigurationListener() {
+                @Override
+                public void onSuccess(Configuration configuration) {
+                    for (int position : entry.getValue()) {
+                        configurations[position] = configuration;
+                    }
+                    complete();
+                }
+
+                @Override
+                public void onFailure(WLFailResponse wlFailResponse) {
+                    for (int position : entry.getValue()) {
+                        failures[position] = wlFailResponse;
+                    }
+                    complete();
+                }
+
+                private void complete() {
+                    if (remaining.decrementAndGet() == 0) {
+                        configurationsListener.onComplete(Arrays.asList(configurations), Arrays.asList(failures));
+                    }
+                }
+            });
+        }
     }
 
 
-    private void obtainConfiguration (String id, URI url, Map<String,String> params, boolean useCache, final ConfigurationListener configurationListener) {
-        Configuration cachedConfiguration = LocalCache.getConfiguration(id);
+    /**
+     * @param maxStaleness - how long after expiration a cached configuration may be served while it is refreshed,
+     *                     0 to never serve expired configurations, or MANAGER_STALENESS to use the manager setting
+     */
+    private void obtainConfiguration (String id, URI url, Map<String,String> params, boolean useCache, long maxStaleness, final ConfigurationListener configurationListener) {
+        if (maxStaleness == MANAGER_STALENESS) {
+            maxStaleness = staleWhileRevalidate ? this.maxStaleness : 0;
+        }
+        Configuration cachedConfiguration = useCache ? LocalCache.getConfiguration(id, maxStaleness) : null;
+
+        refresher.recordUse(id, url, params, cachedConfiguration != null ? LocalCache.getExpiresAt(cachedConfiguration) : 0);
 
-        if (cachedConfiguration != null && useCache) {
+        if (cachedConfiguration != null) {
+            boolean isStale = maxStaleness > 0 && LocalCache.isExpired(cachedConfiguration);
+            if (isStale && cachedConfiguration instanceof ConfigurationInstance) {
+                cachedConfiguration = ((ConfigurationInstance) cachedConfiguration).withSource(ConfigurationSource.LAST_KNOWN_GOOD);
+            }
             logger.debug("obtainConfiguration: Retrieved cached configuration. configuration = " + cachedConfiguration);
             configurationListener.onSuccess(cachedConfiguration);
+            if (isStale) {
+                logger.debug("obtainConfiguration: cached configuration is stale, refreshing in background. id = " + id);
+                sendConfigRequest(id, url, params, revalidateListener);
+            }
         } else {
-            sendConfigRequest(id, url, params, configurationListener);
+            sendConfigRequest(id, url, params, new FallbackListener(id, useCache, configurationListener));
         }
     }
 
-
+    /**
+     * Send a configuration request, unless the circuit breaker says the server or this configuration is failing.
+     * In that case the listener gets the last failure at once.
+     */
     private void sendConfigRequest(final String id, URI url, Map<String,String> params, final ConfigurationListener configurationListener) {
+        WLFailResponse failure;
+        synchronized (inFlightRequests) {
+            List<ConfigurationListener> listeners = inFlightRequests.get(id);
+            if (listeners != null) {
+                logger.debug("sendConfigRequest: request already in flight, attaching listener. id = " + id);
+                listeners.add(configurationListener);
+                return;
+            }
+            failure = circuitBreaker.acquire(id);
+            if (failure == null) {
+                listeners = new ArrayList<ConfigurationListener>();
+                listeners.add(configurationListener);
+                inFlightRequests.put(id, listeners);
+            }
+        }
+
+        if (failure != null) {
+            metrics.increment(LiveUpdateMetrics.Counter.FAILED_FAST);
+            logger.debug("sendConfigRequest: configuration is failing, failing fast. id = " + id);
+            configurationListener.onFailure(failure);
+            return;
+        }
+
+        sendConfigRequest(id, url, params, true);
+    }
+
+    /**
+     * Send the request of an in flight configuration.
+     * When the cached configuration has a validator, the server may answer with 304 (not modified),
+     * 226 with a delta against the cached configuration (when allowDelta), or 200 with the full configuration.
+     */
+    private void sendConfigRequest(final String id, final URI url, final Map<String,String> params, final boolean allowDelta) {
         WLResourceRequest configurationServiceRequest = new WLResourceRequest(url, WLResourceRequest.GET, LIVEUPDATE_CLIENT_SCOPE);
 
         logger.trace("sendConfigRequest: id = " + id + ", url = " + url + "params = " + params);
@@ -191,40 +622,303 @@ public class LiveUpdateManager {
 
         }
 
+        // Revalidate the cached configuration, if the server gave us a validator for it
+        Configuration cached = LocalCache.getAnyConfiguration(id);
+        final ConfigurationInstance cachedConfiguration = cached instanceof ConfigurationInstance && ((ConfigurationInstance) cached).getValidator() != null
+                ? (ConfigurationInstance) cached : null;
+        if (cachedConfiguration != null) {
+            String validator = cachedConfiguration.getValidator();
+            boolean isETag = validator.startsWith("\"") || validator.startsWith("W/");
+            configurationServiceRequest.addHeader(isETag ? HEADER_IF_NONE_MATCH : HEADER_IF_MODIFIED_SINCE, validator);
+            if (allowDelta && isETag) {
+                configurationServiceRequest.addHeader(HEADER_A_IM, ConfigurationDelta.DELTA_IM);
+            }
+        }
+
+        final long requestStart = System.nanoTime();
+        metrics.increment(LiveUpdateMetrics.Counter.NETWORK_REQUESTS);
         configurationServiceRequest.send(new WLResponseListener() {
             @Override
             public void onSuccess(WLResponse wlResponse) {
+                metrics.record(LiveUpdateMetrics.Stage.NETWORK, requestStart);
+                circuitBreaker.onSuccess(id);
+                if (wlResponse.getStatus() == HTTP_NOT_MODIFIED && cachedConfiguration != null) {
+                    notModified(id, cachedConfiguration, wlResponse);
+                    return;
+                }
+
                 JSONObject json = wlResponse.getResponseJSON();
 
                 if (json == null) {
                     logger.error("sendConfigRequest: invalid JSON response");
                     json = new JSONObject();
                 }
-                Configuration configuration = new ConfigurationInstance(id, json);
+                String validator = headerValue(wlResponse, HEADER_ETAG);
+                if (validator == null) {
+                    validator = headerValue(wlResponse, HEADER_LAST_MODIFIED);
+                }
+
+                ConfigurationInstance configuration;
+                if (wlResponse.getStatus() == HTTP_IM_USED && ConfigurationDelta.DELTA_IM.equals(headerValue(wlResponse, HEADER_IM))) {
+                    configuration = null;
+                    if (cachedConfiguration != null && allowDelta) {
+                        long now = System.currentTimeMillis();
+                        long expiresAt = ConfigurationDelta.expiresAt(json);
+                        if (expiresAt <= 0) {
+                            expiresAt = revalidatedExpiresAt(cachedConfiguration, wlResponse, now);
+                        }
+                        configuration = ConfigurationDelta.apply(cachedConfiguration, json, now, expiresAt, validator);
+                    }
+                    if (configuration == null) {
+                        logger.debug("sendConfigRequest: delta not applicable, fetching the full configuration. id = " + id);
+                        sendConfigRequest(id, url, params, false);
+                        return;
+                    }
+                    logger.trace("sendConfigRequest: applied configuration delta. id = " + id);
+                    metrics.increment(LiveUpdateMetrics.Counter.DELTA_APPLIED);
+                } else {
+                    configuration = new ConfigurationInstance(id, json, 0, System.currentTimeMillis(), validator);
+                }
+                // Subscribers are only told about configurations that differ from the cached one
+                Configuration previousConfiguration = subscriptions.containsKey(id) ? LocalCache.getAnyConfiguration(id) : null;
+                boolean isChanged = previousConfiguration instanceof ConfigurationInstance
+                        && !((ConfigurationInstance) previousConfiguration).getSnapshot().contentEquals(configuration.getSnapshot());
+
                 // Save to cache
 
                 logger.trace("sendConfigRequest: saving configuration to cache. configuration = " +configuration);
                 LocalCache.saveConfiguration(configuration);
-                configurationListener.onSuccess(configuration);
+                refresher.recordExpiration(id, LocalCache.getExpiresAt(configuration));
+                ConfigurationInstance networkConfiguration = configuration.withSource(ConfigurationSource.NETWORK);
+                notifySuccess(id, networkConfiguration);
+                if (isChanged) {
+                    notifyChange(id, networkConfiguration);
+                }
             }
 
             @Override
             public void onFailure(WLFailResponse wlFailResponse) {
+                metrics.record(LiveUpdateMetrics.Stage.NETWORK, requestStart);
+                if (wlFailResponse.getStatus() == HTTP_NOT_MODIFIED && cachedConfiguration != null) {
+                    circuitBreaker.onSuccess(id);
+                    notModified(id, cachedConfiguration, wlFailResponse);
+                    return;
+                }
+
+                metrics.increment(LiveUpdateMetrics.Counter.NETWORK_FAILURES);
+                circuitBreaker.onFailure(id, wlFailResponse);
                 logger.error("sendConfigRequest: error while retriving configuration from server. error = " + wlFailResponse.getErrorMsg());
-                configurationListener.onFailure(wlFailResponse);
+                notifyFailure(id, wlFailResponse);
             }
         });
     }
 
-    private String buildIDFromParams (Map<String,String> params) {
+    /**
+     * The cached configuration is still valid, extend its expiration without re-downloading or re-parsing it.
+     * The new expiration is taken from the response Cache-Control / Expires headers, or else the previous time to live is reused.
+     */
+    private void notModified(String id, ConfigurationInstance cachedConfiguration, WLResponse wlResponse) {
+        long now = System.currentTimeMillis();
+        long expiresAt = revalidatedExpiresAt(cachedConfiguration, wlResponse, now);
+
+        metrics.increment(LiveUpdateMetrics.Counter.NOT_MODIFIED);
+        ConfigurationInstance configuration = cachedConfiguration.revalidated(expiresAt, now);
+        logger.trace("sendConfigRequest: configuration not modified, extending expiration. configuration = " + configuration);
+        LocalCache.revalidateConfiguration(configuration);
+        refresher.recordExpiration(id, expiresAt);
+        notifySuccess(id, configuration.withSource(ConfigurationSource.NETWORK));
+    }
+
+    /**
+     * The expiration of a revalidated or delta updated configuration: from the response Cache-Control / Expires headers,
+     * or else the previous time to live of the cached configuration starting now
+     */
+    private long revalidatedExpiresAt(ConfigurationInstance cachedConfiguration, WLResponse wlResponse, long now) {
+        long expiresAt = responseExpiresAt(wlResponse, now);
+        if (expiresAt <= 0) {
+            long timeToLive = cachedConfiguration.getFetchedAt() > 0 ? LocalCache.getExpiresAt(cachedConfiguration) - cachedConfiguration.getFetchedAt() : 0;
+            expiresAt = now + (timeToLive > 0 ? timeToLive : DEFAULT_REVALIDATED_TTL);
+        }
+        return expiresAt;
+    }
+
+        private long responseExpiresAt(WLResponse wlResponse, long now) {
+        String cacheControl = headerValue(wlResponse, HEADER_CACHE_CONTROL);
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim();
+                if (directive.startsWith(MAX_AGE_DIRECTIVE)) {
+                    try {
+                        return now + Long.parseLong(directive.substring(MAX_AGE_DIRECTIVE.length()).trim()) * 1000L;
+                    } catch (NumberFormatException e) {
+                        logger.error("responseExpiresAt: invalid Cache-Control header. cacheControl = " + cacheControl);
+                    }
+                }
+            }
+        }
+        String expires = headerValue(wlResponse, HEADER_EXPIRES);
+        if (expires != null) {
+            try {
+                return CacheFileManager.parseHttpDate(expires);
+            } catch (ParseException e) {
+                logger.error("responseExpiresAt: invalid Expires header. expires = " + expires);
+            }
+        }
+        return 0;
+    }
+
+    private String headerValue(WLResponse wlResponse, String name) {
+        Map<String, List<String>> headers = wlResponse.getHeaders();
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty()) {
+                    return header.getValue().get(0);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Falls back when the server is unavailable (no connection, timeouts, throttling, 5xx, or the circuit breaker is open):
+     * to the expired cached configuration (last known good) when the cache may be used, then to the bundled default.
+     * Other failures, such as 401, 403 or 404, are the server's answer and are passed on to the listener.
+     */
+    private class FallbackListener implements ConfigurationListener {
+        private final String id;
+        private final boolean useCache;
+        private final ConfigurationListener configurationListener;
+
+        FallbackListener(String id, boolean useCache, ConfigurationListener configurationListener) {
+            this.id = id;
+            this.useCache = useCache;
+            this.configurationListener = configurationListener;
+        }
+
+        @Override
+        public void onSuccess(Configuration configuration) {
+            configurationListener.onSuccess(configuration);
+        }
+
+        @Override
+        public void onFailure(WLFailResponse wlFailResponse) {
+            // Failing fast on an open breaker reports the last server failure, so it falls back as well
+            if (!CircuitBreaker.isServerFailure(wlFailResponse)) {
+                configurationListener.onFailure(wlFailResponse);
+                return;
+            }
+
+            Configuration cachedConfiguration = useCache ? LocalCache.getAnyConfiguration(id) : null;
+            if (cachedConfiguration instanceof ConfigurationInstance) {
+                logger.debug("onFailure: serving the last known good configuration. id = " + id);
+                ConfigurationSource source = LocalCache.isExpired(cachedConfiguration) ? ConfigurationSource.LAST_KNOWN_GOOD : ConfigurationSource.CACHE;
+                configurationListener.onSuccess(((ConfigurationInstance) cachedConfiguration).withSource(source));
+                return;
+            }
+
+            JSONObject defaultConfiguration = LiveUpdateManager.this.defaultConfiguration;
+            if (defaultConfiguration != null) {
+                logger.debug("onFailure: serving the bundled default configuration. id = " + id);
+                configurationListener.onSuccess(new ConfigurationInstance(id, defaultConfiguration).withSource(ConfigurationSource.BUNDLED_DEFAULT));
+                return;
+            }
+
+            configurationListener.onFailure(wlFailResponse);
+        }
+    }
+
+    private void notifySuccess(String id, Configuration configuration) {
+        for (ConfigurationListener listener : completeRequest(id)) {
+            try {
+                listener.onSuccess(configuration);
+            } catch (RuntimeException e) {
+                logger.error("sendConfigRequest: configuration listener failed. id = " + id, null, e);
+            }
+        }
+    }
+
+    private void notifyFailure(String id, WLFailResponse wlFailResponse) {
+        for (ConfigurationListener listener : completeRequest(id)) {
+            try {
+                listener.onFailure(wlFailResponse);
+            } catch (RuntimeException e) {
+                logger.error("sendConfigRequest: configuration listener failed. id = " + id, null, e);
+            }
+        }
+    }
+
+    private final ConfigurationListener revalidateListener = new ConfigurationListener() {
+        @Override
+        public void onSuccess(Configuration configuration) {
+            logger.trace("revalidate: refreshed stale configuration. configuration = " + configuration);
+        }
+
+        @Override
+        public void onFailure(WLFailResponse wlFailResponse) {
+            logger.error("revalidate: cannot refresh stale configuration. error = " + wlFailResponse.getErrorMsg());
+        }
+    };
+
+    private List<ConfigurationListener> completeRequest(String id) {
+        synchronized (inFlightRequests) {
+            List<ConfigurationListener> listeners = inFlightRequests.remove(id);
+            return listeners != null ? listeners : new ArrayList<ConfigurationListener>();
+        }
+    }
+
+    /**
+     * Build a canonical cache id from params: keys are sorted, keys and values are escaped,
+     * and ids too long for a directory name are replaced by their SHA-256 digest.
+     * Params ids start with '&', which a URL encoded segment id never contains, so the two never share a cache folder.
+     * Cache folders of ids built by previous versions are migrated to the canonical id.
+     */
+    String buildIDFromParams (Map<String,String> params) {
         logger.trace("buildIDFromParams: params = " + params);
+        StringBuilder paramsId = new StringBuilder(PARAMS_ID_PREFIX);
+        if (params != null && params.size() > 0) {
+            for (Map.Entry<String,String> param : new TreeMap<String,String>(params).entrySet()) {
+                paramsId.append('&').append(escape(param.getKey())).append('=').append(escape(param.getValue()));
+            }
+        }
+        String id = paramsId.length() > MAX_PARAMS_ID_LENGTH ? PARAMS_ID_PREFIX + "_" + sha256(paramsId.toString()) : paramsId.toString();
+
+        if (migratedParamsIds.add(id)) {
+            LocalCache.migrateConfiguration(buildLegacyIDFromParams(params), id);
+        }
+        logger.trace("buildIDFromParams: paramsId = " + id);
+        return id;
+    }
+
+    String buildLegacyIDFromParams (Map<String,String> params) {
         String paramsId = "";
         if (params != null && params.size() > 0) {
             for (String paramKey : params.keySet()) {
                 paramsId += "_" + paramKey + "" + params.get(paramKey);
             }
         }
-        logger.trace("buildIDFromParams: paramsId = " + paramsId);
         return paramsId;
     }
+
+    private static String escape(String value) {
+        try {
+            return value != null ? URLEncoder.encode(value, "UTF-8") : "";
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
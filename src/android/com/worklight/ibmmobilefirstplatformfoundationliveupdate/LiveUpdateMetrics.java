@@ -0,0 +1,221 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LiveUpdateMetrics - counters and latency histograms of the LiveUpdate stages
+ * </p>
+ * Recording is lock free: a counter is an AtomicLong, and a histogram is a fixed array of
+ * power of two microsecond buckets, so percentiles are reported as bucket upper bounds.
+ *
+ * @since 8.0.0
+ * @see LiveUpdateManager#getMetrics()
+ */
+public final class LiveUpdateMetrics {
+    private static final LiveUpdateMetrics instance = new LiveUpdateMetrics();
+
+    /**
+     * Stage - a timed step of obtaining a configuration
+     */
+    public enum Stage {
+        /** Time a plugin call waits for a free plugin executor thread */
+        BRIDGE_QUEUE,
+        /** Time from a plugin call being run to its result being sent back to JavaScript */
+        PLUGIN_CALL,
+        /** Time waiting for the per configuration cache lock, which reads only take to migrate legacy cache files */
+        CACHE_LOCK,
+        /** Reading a configuration record from disk */
+        DISK_READ,
+        /** Writing a configuration record to disk */
+        DISK_WRITE,
+        /** Parsing a configuration payload into JSON */
+        JSON_PARSE,
+        /** Round trip of a configuration request to the server */
+        NETWORK
+    }
+
+    /**
+     * Counter - a count of events or bytes
+     */
+    public enum Counter {
+        CACHE_MEMORY_HIT,
+        CACHE_DISK_HIT,
+        CACHE_MISS,
+        CACHE_EXPIRED,
+        BYTES_READ,
+        BYTES_WRITTEN,
+        NETWORK_REQUESTS,
+        NETWORK_FAILURES,
+        NOT_MODIFIED,
+        DELTA_APPLIED,
+        FAILED_FAST
+    }
+
+    private final Histogram[] histograms = new Histogram[Stage.values().length];
+    private final AtomicLong[] counters = new AtomicLong[Counter.values().length];
+
+    private LiveUpdateMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new AtomicLong();
+        }
+    }
+
+    public static LiveUpdateMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Record the duration of a stage
+     * @param stage - the stage
+     * @param startNanos - the System.nanoTime() the stage started at
+     */
+    public void record(Stage stage, long startNanos) {
+        histograms[stage.ordinal()].record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].incrementAndGet();
+    }
+
+    public void add(Counter counter, long value) {
+        counters[counter.ordinal()].addAndGet(value);
+    }
+
+    public long getCount(Counter counter) {
+        return counters[counter.ordinal()].get();
+    }
+
+    public long getCount(Stage stage) {
+        return histograms[stage.ordinal()].count.get();
+    }
+
+    /**
+     * Get an approximate latency percentile of a stage
+     * @param stage - the stage
+     * @param percentile - the percentile, between 0 and 100
+     * @return the upper bound in microseconds of the bucket holding the percentile, or 0 if nothing was recorded
+     */
+    public long getPercentileMicros(Stage stage, double percentile) {
+        return histograms[stage.ordinal()].percentile(percentile);
+    }
+
+    /**
+     * Reset all counters and histograms
+     */
+    public void reset() {
+        for (Histogram histogram : histograms) {
+            histogram.reset();
+        }
+        for (AtomicLong counter : counters) {
+            counter.set(0);
+        }
+    }
+
+    /**
+     * Get the metrics as JSON:
+     * {"counters": {"cache_memory_hit": n, ...}, "cacheHitRate": r, "stages": {"disk_read": {"count": n, "meanMicros": m, "p50Micros": ..., "p95Micros": ..., "p99Micros": ..., "maxMicros": ...}, ...}}
+     * @return the metrics JSON
+     */
+    public JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+
+        JSONObject countersJson = new JSONObject();
+        for (Counter counter : Counter.values()) {
+            countersJson.put(counter.name().toLowerCase(Locale.US), getCount(counter));
+        }
+        json.put("counters", countersJson);
+
+        long hits = getCount(Counter.CACHE_MEMORY_HIT) + getCount(Counter.CACHE_DISK_HIT);
+        long lookups = hits + getCount(Counter.CACHE_MISS) + getCount(Counter.CACHE_EXPIRED);
+        json.put("cacheHitRate", lookups > 0 ? (double) hits / lookups : 0);
+        json.put("cacheExpiredRate", lookups > 0 ? (double) getCount(Counter.CACHE_EXPIRED) / lookups : 0);
+
+        JSONObject stagesJson = new JSONObject();
+        for (Stage stage : Stage.values()) {
+            Histogram histogram = histograms[stage.ordinal()];
+            long count = histogram.count.get();
+            JSONObject stageJson = new JSONObject();
+            stageJson.put("count", count);
+            stageJson.put("meanMicros", count > 0 ? histogram.sum.get() / count : 0);
+            stageJson.put("p50Micros", histogram.percentile(50));
+            stageJson.put("p95Micros", histogram.percentile(95));
+            stageJson.put("p99Micros", histogram.percentile(99));
+            stageJson.put("maxMicros", histogram.max.get());
+            stagesJson.put(stage.name().toLowerCase(Locale.US), stageJson);
+        }
+        json.put("stages", stagesJson);
+        return json;
+    }
+
+    //Histogram - bucket i counts the durations in [2^(i-1), 2^i) microseconds
+    private static class Histogram {
+        private final static int BUCKETS = 32;
+
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong sum = new AtomicLong();
+        final AtomicLong max = new AtomicLong();
+
+        void record(long micros) {
+            if (micros < 0) {
+                micros = 0;
+            }
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            sum.addAndGet(micros);
+            long currentMax = max.get();
+            while (micros > currentMax && !max.compareAndSet(currentMax, micros)) {
+                currentMax = max.get();
+            }
+        }
+
+        long percentile(double percentile) {
+            long total = count.get();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(i == 0 ? 0 : 1L << i, max.get());
+                }
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+    }
+}
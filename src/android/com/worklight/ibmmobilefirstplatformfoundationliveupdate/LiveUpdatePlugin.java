@@ -20,16 +20,36 @@ import org.apache.cordova.CordovaArgs;
 import org.apache.cordova.CordovaPlugin;
 import org.apache.cordova.LOG;
 import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.Configuration;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.ConfigurationChangeListener;
 import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.ConfigurationListener;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.ConfigurationSource;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.ConfigurationsListener;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache.LocalCache;
 import com.worklight.wlclient.api.WLFailResponse;
 
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Cordova plugin implementation: read the action and parse the json parameters
@@ -40,14 +60,154 @@ import java.util.Map;
 public class LiveUpdatePlugin extends CordovaPlugin {
 
     public static final String ACTION_GET_CONFIG = "getConfiguration";
+    public static final String ACTION_GET_CONFIGS = "getConfigurations";
+    public static final String ACTION_GET_METRICS = "getMetrics";
+    public static final String ACTION_SUBSCRIBE = "subscribe";
+    public static final String ACTION_UNSUBSCRIBE = "unsubscribe";
     public static final String SEG_PARAM_KEY = "segmentId";
     public static final String CACHE_PARAM_KEY = "useClientCache";
     public static final String PARAMETERS_PARAM_KEY = "params";
+    public static final String STALE_PARAM_KEY = "staleWhileRevalidate";
+    public static final String MAX_STALENESS_PARAM_KEY = "maxStaleness";
+    public static final String REQUESTS_PARAM_KEY = "requests";
+    public static final String RESULTS_KEY = "results";
+    public static final String RESULT_CONFIGURATION_KEY = "configuration";
+    public static final String RESULT_ERROR_KEY = "error";
+    public static final String RESULT_SOURCE_KEY = "source";
+    public static final String INCLUDE_SOURCE_PARAM_KEY = "includeSource";
+    private static final long DEFAULT_MAX_STALENESS_SECONDS = 24 * 60 * 60;
+
+    // config.xml preferences for the plugin executor
+    public static final String POOL_SIZE_PREFERENCE = "LiveUpdateThreadPoolSize";
+    public static final String QUEUE_CAPACITY_PREFERENCE = "LiveUpdateQueueCapacity";
+    public static final String BACKGROUND_REFRESH_PREFERENCE = "LiveUpdateBackgroundRefresh";
+    public static final String PRELOAD_PREFERENCE = "LiveUpdatePreload";
+    public static final String PRELOAD_SEGMENTS_PREFERENCE = "LiveUpdatePreloadSegments";
+    public static final String CACHE_MAX_SIZE_PREFERENCE = "LiveUpdateCacheMaxSize";
+    public static final String CACHE_COMPRESSION_THRESHOLD_PREFERENCE = "LiveUpdateCacheCompressionThreshold";
+    public static final String DEFAULT_CONFIGURATION_PREFERENCE = "LiveUpdateDefaultConfiguration";
+    private static final int DEFAULT_POOL_SIZE = 2;
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    private ThreadPoolExecutor executor;
+    private volatile LiveUpdateManager manager;
+    // Change subscriptions of the WebView, by segment id or params. The map is also the lock of subscribe and unsubscribe.
+    private final Map<String, PluginChangeListener> subscriptions = new ConcurrentHashMap<String, PluginChangeListener>();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private volatile int maxQueueDepth;
+
+    @Override
+    protected void pluginInitialize() {
+        int poolSize = Math.max(1, preferences.getInteger(POOL_SIZE_PREFERENCE, DEFAULT_POOL_SIZE));
+        int queueCapacity = Math.max(1, preferences.getInteger(QUEUE_CAPACITY_PREFERENCE, DEFAULT_QUEUE_CAPACITY));
+        LOG.d("pluginInitialize", "executor pool size:" + poolSize + ", queue capacity:" + queueCapacity);
+
+        executor = new ThreadPoolExecutor(poolSize, poolSize, THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "liveupdate-plugin-" + threadNumber.getAndIncrement());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+
+        int cacheMaxSize = preferences.getInteger(CACHE_MAX_SIZE_PREFERENCE, 0);
+        if (cacheMaxSize > 0) {
+            LocalCache.setMaxDiskSize(cacheMaxSize * 1024L);
+        }
+        int compressionThreshold = preferences.getInteger(CACHE_COMPRESSION_THRESHOLD_PREFERENCE, 0);
+        if (compressionThreshold > 0) {
+            LocalCache.setCompressionThreshold(compressionThreshold * 1024);
+        }
+
+        String defaultConfiguration = preferences.getString(DEFAULT_CONFIGURATION_PREFERENCE, null);
+        if (defaultConfiguration != null && defaultConfiguration.length() > 0) {
+            loadDefaultConfiguration(defaultConfiguration);
+        }
+
+        if (preferences.getBoolean(PRELOAD_PREFERENCE, false)) {
+            preload(preferences.getString(PRELOAD_SEGMENTS_PREFERENCE, "all"));
+        }
+    }
 
     /**
-     * @param action          the action to execute. currently only "getConfiguration" is supported
+     * Load the bundled default configuration once, on the plugin executor
+     * @param assetPath - the asset path of the default configuration
+     */
+    private void loadDefaultConfiguration(final String assetPath) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        manager().loadDefaultConfiguration(assetPath);
+                    } catch (Exception e) {
+                        LOG.d("loadDefaultConfiguration", "cannot load default configuration " + assetPath + ": " + e.getLocalizedMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.d("loadDefaultConfiguration", "executor queue is full, skipping default configuration " + assetPath);
+        }
+    }
+
+    /**
+     * Build the manager and load the given cached segments into memory on the plugin executor,
+     * so the first JavaScript call is answered from memory
+     * @param segmentIds - comma separated segment ids
+     */
+    private void preload(String segmentIds) {
+        LOG.d("preload", "preloading segments:" + segmentIds);
+        for (String segmentId : segmentIds.split(",")) {
+            final String trimmedSegmentId = segmentId.trim();
+            if (trimmedSegmentId.length() == 0) {
+                continue;
+            }
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            manager().preloadConfiguration(java.net.URLEncoder.encode(trimmedSegmentId, "UTF-8"));
+                        } catch (Exception e) {
+                            LOG.d("preload", "cannot preload segment " + trimmedSegmentId + ": " + e.getLocalizedMessage());
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                LOG.d("preload", "preload queue is full, skipping segment " + trimmedSegmentId);
+            }
+        }
+    }
+
+    @Override
+    public void onReset() {
+        // The page is reloading or navigating, its kept callbacks are gone
+        unsubscribeAll();
+        super.onReset();
+    }
+
+    @Override
+    public void onDestroy() {
+        unsubscribeAll();
+        if (executor != null) {
+            executor.shutdown();
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * @param action          the action to execute. "getConfiguration", "getConfigurations" for several configurations at once,
+     *                        "subscribe" / "unsubscribe" for configuration changes, or "getMetrics"
      * @param args            JSON Array of arguments for the plugin. The JSON can contains three elements: segmentId, useClientCache and params.
      * For example : {"params": { "a": 2, "c": true} , "useClientCache": true } , or {"segmentId": "vip" , "useClientCache": true }
+     * The cache options may also contain staleWhileRevalidate (boolean) and maxStaleness (seconds) to serve an expired
+     * cached configuration while it is refreshed in the background.
+     * With includeSource (boolean) getConfiguration answers {"configuration": {...}, "source": "network"} instead of the
+     * configuration alone; getConfigurations results always carry the source.
      * In normal flow only one of the two will be used: either 'segmentId' or 'params'.
      * If , accidentally user supplies both, the method will ignore the params.
      * @param callbackContext the callbackContext used when calling back into JavaScript.
@@ -55,51 +215,278 @@ public class LiveUpdatePlugin extends CordovaPlugin {
      */
     public boolean execute(final String action, final CordovaArgs args, final CallbackContext callbackContext) throws JSONException {
         LOG.d("execute", "entering with action:" + action);
-        try {
-            if (ACTION_GET_CONFIG.equals(action)) {
-                final String firstParam = args.getString(0);
-
-                // if the user sent non-JSON object , the parser will throw an exception
-                JSONObject actionParams = new JSONObject(firstParam);
-                LOG.d("execute", "json parameters are:" + actionParams.toString());
-                String segmentId = actionParams.optString(SEG_PARAM_KEY, "all");
-                final Boolean useClientCache = actionParams.optBoolean(CACHE_PARAM_KEY, true); // cache will be enabled by default
-                final JSONObject params = actionParams.optJSONObject(PARAMETERS_PARAM_KEY);
-                if (params == null) {
-                    segmentId = java.net.URLEncoder.encode(segmentId, "UTF-8");
-                    // If the user supplied segment ID, we'll use it and ignore the params.
-                    getBySegmentId(callbackContext, segmentId, useClientCache);
-                } else {
-                    LOG.d("execute", "trying to find configuration from:" + params);
-                    // if user supplied params, use it.
-                    getByMap(callbackContext, params, useClientCache);
+        if (ACTION_GET_CONFIG.equals(action)) {
+            dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    getConfiguration(args, callbackContext);
                 }
-            } else {
-                LOG.d("execute", "unsupported action " + action + " for this plugin");
-                PluginResult pluginResult = new PluginResult(PluginResult.Status.INVALID_ACTION, action);
-                callbackContext.sendPluginResult(pluginResult);
-            }
+            }, callbackContext);
+        } else if (ACTION_GET_CONFIGS.equals(action)) {
+            dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    getConfigurations(args, callbackContext);
+                }
+            }, callbackContext);
+        } else if (ACTION_GET_METRICS.equals(action)) {
+            getMetrics(callbackContext);
+        } else if (ACTION_SUBSCRIBE.equals(action)) {
+            dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    subscribe(args, callbackContext);
+                }
+            }, callbackContext);
+        } else if (ACTION_UNSUBSCRIBE.equals(action)) {
+            dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    unsubscribe(args, callbackContext);
+                }
+            }, callbackContext);
+        } else {
+            LOG.d("execute", "unsupported action " + action + " for this plugin");
+            PluginResult pluginResult = new PluginResult(PluginResult.Status.INVALID_ACTION, action);
+            callbackContext.sendPluginResult(pluginResult);
+        }
 
-            return true;
+        return true;
+    }
+
+    private void getConfiguration(final CordovaArgs args, final CallbackContext callbackContext) {
+        try {
+            final String firstParam = args.getString(0);
 
+            // if the user sent non-JSON object , the parser will throw an exception
+            JSONObject actionParams = new JSONObject(firstParam);
+            LOG.d("execute", "json parameters are:" + actionParams.toString());
+            String segmentId = actionParams.optString(SEG_PARAM_KEY, "all");
+            final Boolean useClientCache = actionParams.optBoolean(CACHE_PARAM_KEY, true); // cache will be enabled by default
+            final JSONObject params = actionParams.optJSONObject(PARAMETERS_PARAM_KEY);
+            final long maxStaleness = maxStaleness(actionParams);
+            PluginConfigurationListener configurationListener = new PluginConfigurationListener(callbackContext, actionParams.optBoolean(INCLUDE_SOURCE_PARAM_KEY, false));
+            if (params == null) {
+                segmentId = java.net.URLEncoder.encode(segmentId, "UTF-8");
+                // If the user supplied segment ID, we'll use it and ignore the params.
+                getBySegmentId(configurationListener, segmentId, useClientCache, maxStaleness);
+            } else {
+                LOG.d("execute", "trying to find configuration from:" + params);
+                // if user supplied params, use it.
+                getByMap(configurationListener, params, useClientCache, maxStaleness);
+            }
         } catch (Exception e) {
             String errorMsg = e.getLocalizedMessage();
 
-            if (e.getMessage().startsWith("End of input")) {
+            if (e.getMessage() != null && e.getMessage().startsWith("End of input")) {
                 // the JSON exception message for empty string is not helpful so we'll replace it:
                 errorMsg  = "Invalid JSON format for first parameter";
             }
             LOG.d("exception:", e.getLocalizedMessage());
             callbackContext.error(errorMsg);
-            return false;
         }
     }
 
-    private void getBySegmentId(final CallbackContext callbackContext, String segmentId, Boolean useClientCache) {
-        LiveUpdateManager.getInstance(this.cordova.getActivity().getApplicationContext()).obtainConfiguration(segmentId, useClientCache, new PluginConfigurationListener(callbackContext));
+    /**
+     * Subscribe to the changes of a configuration. The first argument is {"segmentId": "vip"} or {"params": {"a": 2}}.
+     * The callback is kept, and called with the configuration each time it changes.
+     * Subscriptions to the same configuration share a single manager listener, which calls every subscribed callback.
+     */
+    private void subscribe(final CordovaArgs args, final CallbackContext callbackContext) {
+        try {
+            PluginChangeListener changeListener = new PluginChangeListener(new JSONObject(args.getString(0)), manager());
+            synchronized (subscriptions) {
+                PluginChangeListener existingListener = subscriptions.get(changeListener.key);
+                if (existingListener != null) {
+                    existingListener.callbackContexts.add(callbackContext);
+                } else {
+                    changeListener.callbackContexts.add(callbackContext);
+                    subscriptions.put(changeListener.key, changeListener);
+                    changeListener.subscribe(manager());
+                }
+            }
+
+            PluginResult pluginResult = new PluginResult(PluginResult.Status.NO_RESULT);
+            pluginResult.setKeepCallback(true);
+            callbackContext.sendPluginResult(pluginResult);
+        } catch (Exception e) {
+            LOG.d("exception:", e.getLocalizedMessage());
+            callbackContext.error(e.getLocalizedMessage());
+        }
     }
 
-    private void getByMap(final CallbackContext callbackContext, JSONObject params, Boolean useClientCache) {
+    /**
+     * Unsubscribe all the callbacks subscribed to the changes of a configuration, with the same first argument as subscribe
+     */
+    private void unsubscribe(final CordovaArgs args, final CallbackContext callbackContext) {
+        try {
+            PluginChangeListener changeListener;
+            synchronized (subscriptions) {
+                changeListener = subscriptions.remove(new PluginChangeListener(new JSONObject(args.getString(0)), manager()).key);
+                if (changeListener != null) {
+                    changeListener.unsubscribe(manager());
+                }
+            }
+            if (changeListener != null) {
+                changeListener.close();
+            }
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, changeListener != null));
+        } catch (Exception e) {
+            LOG.d("exception:", e.getLocalizedMessage());
+            callbackContext.error(e.getLocalizedMessage());
+        }
+    }
+
+    private void unsubscribeAll() {
+        synchronized (subscriptions) {
+            if (manager != null) {
+                for (PluginChangeListener changeListener : subscriptions.values()) {
+                    changeListener.unsubscribe(manager);
+                }
+            }
+            subscriptions.clear();
+        }
+    }
+
+    /**
+     * Send the metrics JSON, with the plugin executor state added under "executor"
+     */
+    private void getMetrics(CallbackContext callbackContext) {
+        try {
+            JSONObject json = LiveUpdateMetrics.getInstance().toJSON();
+            JSONObject executorJson = new JSONObject();
+            executorJson.put("queueDepth", getQueueDepth());
+            executorJson.put("maxQueueDepth", getMaxQueueDepth());
+            executorJson.put("activeCount", getActiveCount());
+            executorJson.put("completedCount", getCompletedCount());
+            executorJson.put("rejectedCount", getRejectedCount());
+            json.put("executor", executorJson);
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, json));
+        } catch (JSONException e) {
+            LOG.d("exception:", e.getLocalizedMessage());
+            callbackContext.error(e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Run the action on the plugin executor, so the Cordova bridge thread never waits on cache or JSON work.
+     * When the executor queue is full the action is rejected with an error result, the action itself is still
+     * valid, so execute must return true or Cordova sends a second, INVALID_ACTION result.
+     */
+    private void dispatch(final Runnable action, CallbackContext callbackContext) {
+        final long queuedAt = System.nanoTime();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    LiveUpdateMetrics.getInstance().record(LiveUpdateMetrics.Stage.BRIDGE_QUEUE, queuedAt);
+                    action.run();
+                }
+            });
+            maxQueueDepth = Math.max(maxQueueDepth, executor.getQueue().size());
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            LOG.d("dispatch", "request rejected, queue depth:" + executor.getQueue().size());
+            callbackContext.error("Too many pending LiveUpdate requests");
+        }
+    }
+
+    /**
+     * Get the number of actions waiting for a free executor thread
+     * @return the executor queue depth
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Get the highest executor queue depth seen since the plugin was initialized
+     * @return the maximum executor queue depth
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Get the number of actions currently running on the executor
+     * @return the active thread count
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Get the LiveUpdateManager, applying the config.xml preferences the first time
+     */
+    private LiveUpdateManager manager() {
+        LiveUpdateManager manager = this.manager;
+        if (manager == null) {
+            synchronized (this) {
+                manager = this.manager;
+                if (manager == null) {
+                    manager = LiveUpdateManager.getInstance(this.cordova.getActivity().getApplicationContext());
+                    if (preferences.getBoolean(BACKGROUND_REFRESH_PREFERENCE, false)) {
+                        manager.setBackgroundRefreshEnabled(true);
+                    }
+                    this.manager = manager;
+                }
+            }
+        }
+        return manager;
+    }
+
+    private long maxStaleness(JSONObject actionParams) {
+        if (!actionParams.has(STALE_PARAM_KEY)) {
+            return LiveUpdateManager.MANAGER_STALENESS;
+        }
+        if (!actionParams.optBoolean(STALE_PARAM_KEY, false)) {
+            return 0;
+        }
+        return actionParams.optLong(MAX_STALENESS_PARAM_KEY, DEFAULT_MAX_STALENESS_SECONDS) * 1000L;
+    }
+
+    private void getBySegmentId(PluginConfigurationListener configurationListener, String segmentId, Boolean useClientCache, long maxStaleness) {
+        manager().obtainConfiguration(segmentId, useClientCache, maxStaleness, configurationListener);
+    }
+
+    private void getByMap(PluginConfigurationListener configurationListener, JSONObject params, Boolean useClientCache, long maxStaleness) {
+        Map<String, String> map = toMap(params);
+        LOG.d("getByMap", "map size:"+map.size());
+        manager().obtainConfiguration(map, useClientCache, maxStaleness, configurationListener);
+    }
+
+    // "cache", "network", "last_known_good" or "bundled_default"
+    private static String sourceName(Configuration configuration) {
+        ConfigurationSource source = configuration.getSource();
+        return source != null ? source.name().toLowerCase(Locale.US) : null;
+    }
+
+
+    private static JSONObject wlFailResponseToJson (WLFailResponse wlFailResponse) throws JSONException {
+        JSONObject failResponse = new JSONObject();
+        failResponse.put("status", wlFailResponse.getStatus());
+        if (wlFailResponse.getResponseJSON() != null) {
+            LOG.d("wlFailResponseToJson", "found JSON resonse");
+            failResponse.put("errorMsg", wlFailResponse.getResponseJSON());
+        } else if (wlFailResponse.getResponseText() != ""){
+            LOG.d("wlFailResponseToJson", "found Text resonse");
+            failResponse.put("errorMsg", wlFailResponse.getResponseText());
+        } else {
+            LOG.d("wlFailResponseToJson", "found only error code");
+            failResponse.put("errorMsg", wlFailResponse.getErrorMsg());
+        }
+        return failResponse;
+    }
+
+    private static Map<String, String> toMap(JSONObject params) {
         Map<String, String> map = new HashMap<String, String>();
         // If we have params, use them, otherwise, we'll send an empty map, which means without user-defined parameters.
         if (params != null) {
@@ -109,16 +496,148 @@ public class LiveUpdatePlugin extends CordovaPlugin {
                 map.put(key, params.optString(key,""));
             }
         }
-        LOG.d("getByMap", "map size:"+map.size());
-        LiveUpdateManager.getInstance(this.cordova.getActivity().getApplicationContext()).obtainConfiguration(map, useClientCache, new PluginConfigurationListener(callbackContext));
+        return map;
     }
 
+    /**
+     * Obtain several configurations in one bridge call.
+     * The first argument is {"requests": [{"segmentId": "vip"}, {"params": {"a": 2}}], "useClientCache": true},
+     * and the result is {"results": [{"configuration": {...}}, {"error": {...}}]} in the order of the requests.
+     */
+    private void getConfigurations(final CordovaArgs args, final CallbackContext callbackContext) {
+        try {
+            JSONObject actionParams = new JSONObject(args.getString(0));
+            LOG.d("getConfigurations", "json parameters are:" + actionParams.toString());
+            JSONArray requests = actionParams.optJSONArray(REQUESTS_PARAM_KEY);
+            if (requests == null) {
+                callbackContext.error("Missing " + REQUESTS_PARAM_KEY + " array");
+                return;
+            }
+
+            // Segment requests come back first, then params requests; keep each one's position in the original list
+            List<String> segmentIds = new ArrayList<String>();
+            List<Map<String, String>> paramsList = new ArrayList<Map<String, String>>();
+            final List<Integer> segmentPositions = new ArrayList<Integer>();
+            final List<Integer> paramsPositions = new ArrayList<Integer>();
+            for (int i = 0; i < requests.length(); i++) {
+                JSONObject request = requests.optJSONObject(i);
+                JSONObject params = request != null ? request.optJSONObject(PARAMETERS_PARAM_KEY) : null;
+                if (params == null) {
+                    String segmentId = request != null ? request.optString(SEG_PARAM_KEY, "all") : "all";
+                    segmentIds.add(java.net.URLEncoder.encode(segmentId, "UTF-8"));
+                    segmentPositions.add(i);
+                } else {
+                    paramsList.add(toMap(params));
+                    paramsPositions.add(i);
+                }
+            }
+
+            final int count = requests.length();
+            final long startedAt = System.nanoTime();
+            boolean useClientCache = actionParams.optBoolean(CACHE_PARAM_KEY, true);
+            manager().obtainConfigurations(segmentIds, paramsList, useClientCache, maxStaleness(actionParams), new ConfigurationsListener() {
+                @Override
+                public void onComplete(List<Configuration> configurations, List<WLFailResponse> failures) {
+                    PluginResult pluginResult;
+                    try {
+                        JSONObject[] results = new JSONObject[count];
+                        for (int i = 0; i < configurations.size(); i++) {
+                            int position = i < segmentPositions.size() ? segmentPositions.get(i) : paramsPositions.get(i - segmentPositions.size());
+                            JSONObject result = new JSONObject();
+                            if (configurations.get(i) != null) {
+                                result.put(RESULT_CONFIGURATION_KEY, ((ConfigurationInstance) configurations.get(i)).getData().getJSONObject(ConfigurationInstance.DATA_KEY));
+                                result.put(RESULT_SOURCE_KEY, sourceName(configurations.get(i)));
+                            } else {
+                                result.put(RESULT_ERROR_KEY, wlFailResponseToJson(failures.get(i)));
+                            }
+                            results[position] = result;
+                        }
+                        JSONObject json = new JSONObject();
+                        json.put(RESULTS_KEY, new JSONArray(Arrays.asList(results)));
+                        pluginResult = new PluginResult(PluginResult.Status.OK, json);
+                    } catch (JSONException ex) {
+                        LOG.d("exception:", ex.getLocalizedMessage());
+                        pluginResult = new PluginResult(PluginResult.Status.ERROR, ex.getLocalizedMessage());
+                    }
+                    callbackContext.sendPluginResult(pluginResult);
+                    LiveUpdateMetrics.getInstance().record(LiveUpdateMetrics.Stage.PLUGIN_CALL, startedAt);
+                }
+            });
+        } catch (Exception e) {
+            LOG.d("exception:", e.getLocalizedMessage());
+            callbackContext.error(e.getLocalizedMessage());
+        }
+    }
+
+    class PluginChangeListener implements ConfigurationChangeListener {
+        final String segmentId;
+        final Map<String, String> params;
+        // The manager's cache id of the configuration, segment ids are URL encoded so they never match a params id
+        final String key;
+        final Set<CallbackContext> callbackContexts = new CopyOnWriteArraySet<CallbackContext>();
+
+        PluginChangeListener(JSONObject actionParams, LiveUpdateManager manager) throws UnsupportedEncodingException {
+            JSONObject params = actionParams.optJSONObject(PARAMETERS_PARAM_KEY);
+            if (params == null) {
+                this.segmentId = java.net.URLEncoder.encode(actionParams.optString(SEG_PARAM_KEY, "all"), "UTF-8");
+                this.params = null;
+                this.key = this.segmentId;
+            } else {
+                this.segmentId = null;
+                this.params = toMap(params);
+                this.key = manager.buildIDFromParams(this.params);
+            }
+        }
+
+        void subscribe(LiveUpdateManager manager) {
+            if (params == null) {
+                manager.subscribe(segmentId, this);
+            } else {
+                manager.subscribe(params, this);
+            }
+        }
+
+        void unsubscribe(LiveUpdateManager manager) {
+            if (params == null) {
+                manager.unsubscribe(segmentId, this);
+            } else {
+                manager.unsubscribe(params, this);
+            }
+        }
+
+        // Releases the kept JavaScript callbacks
+        void close() {
+            for (CallbackContext callbackContext : callbackContexts) {
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
+            }
+        }
+
+        @Override
+        public void onChange(Configuration configuration) {
+            PluginResult pluginResult;
+            try {
+                LOG.d("onChange", "got :" + configuration);
+                JSONObject json = ((ConfigurationInstance)configuration).getData().getJSONObject(ConfigurationInstance.DATA_KEY);
+                pluginResult = new PluginResult(PluginResult.Status.OK, json);
+            } catch (JSONException ex) {
+                LOG.d("exception:", ex.getLocalizedMessage());
+                pluginResult = new PluginResult(PluginResult.Status.ERROR, ex.getLocalizedMessage());
+            }
+            pluginResult.setKeepCallback(true);
+            for (CallbackContext callbackContext : callbackContexts) {
+                callbackContext.sendPluginResult(pluginResult);
+            }
+        }
+    }
 
     class PluginConfigurationListener implements ConfigurationListener {
         final CallbackContext callbackContext;
+        final boolean includeSource;
+        final long startedAt = System.nanoTime();
 
-        public PluginConfigurationListener(final CallbackContext callback) {
+        public PluginConfigurationListener(final CallbackContext callback, boolean includeSource) {
              callbackContext = callback;
+             this.includeSource = includeSource;
         }
 
         @Override
@@ -127,12 +646,19 @@ public class LiveUpdatePlugin extends CordovaPlugin {
             try {
                 LOG.d("onSuccess", "got :" + configuration);
                 JSONObject json = ((ConfigurationInstance)configuration).getData().getJSONObject(ConfigurationInstance.DATA_KEY);
+                if (includeSource) {
+                    JSONObject result = new JSONObject();
+                    result.put(RESULT_CONFIGURATION_KEY, json);
+                    result.put(RESULT_SOURCE_KEY, sourceName(configuration));
+                    json = result;
+                }
                 pluginResult = new PluginResult(PluginResult.Status.OK,json);
             } catch (JSONException ex) {
                 LOG.d("exception:", ex.getLocalizedMessage());
                 pluginResult = new PluginResult(PluginResult.Status.ERROR,ex.getLocalizedMessage());
             }
             callbackContext.sendPluginResult(pluginResult);
+            LiveUpdateMetrics.getInstance().record(LiveUpdateMetrics.Stage.PLUGIN_CALL, startedAt);
         }
 
         @Override
@@ -149,22 +675,7 @@ public class LiveUpdatePlugin extends CordovaPlugin {
                 pluginResult = new PluginResult(PluginResult.Status.ERROR, ex.getLocalizedMessage());
             }
             callbackContext.sendPluginResult(pluginResult);
-        }
-
-        private JSONObject wlFailResponseToJson (WLFailResponse wlFailResponse) throws JSONException {
-            JSONObject failResponse = new JSONObject();
-            failResponse.put("status", wlFailResponse.getStatus());
-            if (wlFailResponse.getResponseJSON() != null) {
-                LOG.d("wlFailResponseToJson", "found JSON resonse");
-                failResponse.put("errorMsg", wlFailResponse.getResponseJSON());
-            } else if (wlFailResponse.getResponseText() != ""){
-                LOG.d("wlFailResponseToJson", "found Text resonse");
-                failResponse.put("errorMsg", wlFailResponse.getResponseText());
-            } else {
-                LOG.d("wlFailResponseToJson", "found only error code");
-                failResponse.put("errorMsg", wlFailResponse.getErrorMsg());
-            }
-            return failResponse;
+            LiveUpdateMetrics.getInstance().record(LiveUpdateMetrics.Stage.PLUGIN_CALL, startedAt);
         }
 
     }
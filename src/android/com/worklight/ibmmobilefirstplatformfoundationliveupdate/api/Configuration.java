@@ -38,4 +38,50 @@ public interface Configuration {
      * @return the value for the given propertyId, or null in case the property doesn't exist
      */
     public String getProperty (String propertyId);
+
+    /**
+     * Check if a feature is enabled
+     * @param featureId - the feature id to be checked
+     * @param defaultValue - the value returned for a non existing feature
+     * @return true if feature is enabled, or defaultValue for non existing feature.
+     */
+    public boolean isFeatureEnabled (String featureId, boolean defaultValue);
+
+    /**
+     * Get value of a property as an int
+     * @param propertyId -  the property id
+     * @param defaultValue - the value returned when the property doesn't exist or is not an int
+     * @return the int value for the given propertyId, or defaultValue
+     */
+    public int getIntProperty (String propertyId, int defaultValue);
+
+    /**
+     * Get value of a property as a long
+     * @param propertyId -  the property id
+     * @param defaultValue - the value returned when the property doesn't exist or is not a long
+     * @return the long value for the given propertyId, or defaultValue
+     */
+    public long getLongProperty (String propertyId, long defaultValue);
+
+    /**
+     * Get value of a property as a double
+     * @param propertyId -  the property id
+     * @param defaultValue - the value returned when the property doesn't exist or is not a number
+     * @return the double value for the given propertyId, or defaultValue
+     */
+    public double getDoubleProperty (String propertyId, double defaultValue);
+
+    /**
+     * Get value of a property as a boolean
+     * @param propertyId -  the property id
+     * @param defaultValue - the value returned when the property doesn't exist or is not "true" / "false"
+     * @return the boolean value for the given propertyId, or defaultValue
+     */
+    public boolean getBooleanProperty (String propertyId, boolean defaultValue);
+
+    /**
+     * Get where this configuration came from
+     * @return the configuration source: the cache, the server, an expired cached copy or the bundled default
+     */
+    public ConfigurationSource getSource ();
 }
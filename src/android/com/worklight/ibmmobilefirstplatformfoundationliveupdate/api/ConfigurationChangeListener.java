@@ -0,0 +1,34 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate.api;
+
+/**
+ * ConfigurationChangeListener interface
+ * </p>
+ * Listener for configuration change subscriptions
+ *
+ * @see com.worklight.ibmmobilefirstplatformfoundationliveupdate.LiveUpdateManager
+ */
+public interface ConfigurationChangeListener {
+    /***
+     * This method is called when a subscribed configuration was obtained from the server
+     * and its features or properties differ from the cached configuration.
+     *
+     * @param configuration - the new configuration
+     * @see Configuration
+     */
+    void onChange(Configuration configuration);
+}
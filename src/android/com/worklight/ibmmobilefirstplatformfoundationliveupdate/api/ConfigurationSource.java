@@ -0,0 +1,35 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate.api;
+
+/**
+ * ConfigurationSource - where an obtained configuration came from
+ * <p/>
+ * Configurations are looked up in this order: a fresh cached configuration, the server,
+ * an expired cached configuration (last known good), and finally the default configuration bundled with the app.
+ * @since 8.0.0
+ * @see Configuration#getSource()
+ */
+public enum ConfigurationSource {
+    /** A cached configuration that has not expired */
+    CACHE,
+    /** A configuration obtained or revalidated from the server */
+    NETWORK,
+    /** An expired cached configuration, served by stale-while-revalidate or because the server could not be reached */
+    LAST_KNOWN_GOOD,
+    /** The default configuration bundled with the app, served because nothing else is available */
+    BUNDLED_DEFAULT
+}
@@ -0,0 +1,39 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate.api;
+
+import com.worklight.wlclient.api.WLFailResponse;
+
+import java.util.List;
+
+/**
+ * ConfigurationsListener interface
+ * </p>
+ * Listener for the obtainConfigurations batch API
+ *
+ * @see com.worklight.ibmmobilefirstplatformfoundationliveupdate.LiveUpdateManager
+ */
+public interface ConfigurationsListener {
+    /***
+     * This method is called once all the requested configurations were obtained or failed.
+     * Both lists follow the order of the requests: segment ids first, then params.
+     *
+     * @param configurations - the obtained configurations, null where a request failed
+     * @param failures - the failure responses, null where a request succeeded
+     * @see Configuration
+     */
+    void onComplete(List<Configuration> configurations, List<WLFailResponse> failures);
+}
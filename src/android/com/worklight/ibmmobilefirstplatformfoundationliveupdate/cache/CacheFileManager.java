@@ -17,25 +17,62 @@ package com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache;
 
 import com.worklight.common.Logger;
 import com.worklight.ibmmobilefirstplatformfoundationliveupdate.ConfigurationInstance;
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.LiveUpdateMetrics;
 import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.Configuration;
 import com.worklight.wlclient.api.WLClient;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * CacheFileManager
+ * </p>
+ * Each configuration is cached in a single record file (configuration.dat) made of a fixed size header
+ * followed by the configuration JSON payload:
+ * <pre>
+ * magic (int) | version (short) | flags (short) | expiresAt (long, epoch millis) | payload length (int) |
+ * fetchedAt (long, epoch millis) | validator length (short) | validator (UTF-8) | payload (UTF-8)
+ * </pre>
+ * The validator is the ETag or Last-Modified value of the response, used to revalidate the configuration.
+ * Version 1 records (without fetchedAt and validator) are still readable.
+ * The expiration check reads the header only.
+ * Cache folders written by older versions (configuration.json + metadata.json) are migrated on first access.
+ * Each record also holds a binary snapshot of the features and properties (see ConfigurationSnapshot),
+ * so cache hits read the header and the snapshot only, and the JSON payload is read when the full data is asked for.
+ * Payloads above the compression threshold are stored Deflate compressed, flagged in the record header.
+ * An index of the cached configurations (size, last access, expiration) drives the eviction of the disk cache.
  *
  * @since 8.0.0
  * @author Ishai Borovoy
@@ -43,26 +80,251 @@ import java.util.TimeZone;
 public class CacheFileManager {
     private static final Logger logger = Logger.getInstance(CacheFileManager.class.getName());
 
+    private final static String ATTRIBUTE_EXPIRES_AT  = "expiresAt";
+    private final static String FORMATTER_PATTERN    = "EEE, dd MMM yyyy HH:mm:ss z";
+    private final static String FORMATTER_TIMEZONE  = "GMT";
+
+    // SimpleDateFormat is not thread safe, so each thread reuses its own instance instead of creating one per parse
+    private static final ThreadLocal<SimpleDateFormat> httpDateFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            SimpleDateFormat simpleDateFormat = new SimpleDateFormat(FORMATTER_PATTERN, Locale.US);
+            simpleDateFormat.setTimeZone(TimeZone.getTimeZone(FORMATTER_TIMEZONE));
+            return simpleDateFormat;
+        }
+    };
+
+    private static final CacheIndex cacheIndex = new CacheIndex();
+    private static final LiveUpdateMetrics metrics = LiveUpdateMetrics.getInstance();
+    private static volatile int compressionThreshold = 0;
+    private static volatile File cacheDirectory;
+
     //CacheFileManager static functions
     protected static boolean isExpired(String configurationId) {
-        MetadataFile metadataFile = new MetadataFile();
-        return metadataFile.isExpired(configurationId);
+        return System.currentTimeMillis() > expiresAt(configurationId);
+    }
+
+    /**
+     * Get the expiration time of a cached configuration
+     * @param configurationId - the configuration id
+     * @return the expiration time in epoch millis, or 0 if the configuration is not cached
+     */
+    protected static long expiresAt(String configurationId) {
+        return new RecordFile().readExpiresAt(configurationId);
     }
 
     protected static Configuration configuration(String configurationId) {
-        ConfigurationFile configurationFile = new ConfigurationFile();
-        return configurationFile.readConfiguration(configurationId);
+        Configuration configuration = new RecordFile().readConfiguration(configurationId);
+        if (configuration != null) {
+            cacheIndex.touch(configurationId);
+        }
+        return configuration;
+    }
+
+    /**
+     * Check if a configuration is only cached in the files written by previous versions
+     * @param configurationId - the configuration id
+     * @return true if the legacy files must be migrated before the configuration can be read
+     */
+    protected static boolean hasLegacyFiles(String configurationId) {
+        return LegacyFiles.exist(new RecordFile(), configurationId);
+    }
+
+    /**
+     * Convert the legacy cache files of a configuration into a record file.
+     * This writes the record, so it must be serialized with the other writes of the configuration.
+     * @param configurationId - the configuration id
+     */
+    protected static void migrateLegacyFiles(String configurationId) {
+        LegacyFiles.migrate(new RecordFile(), configurationId);
+    }
+
+    /**
+     * Record that a configuration was read from a faster tier, so the disk eviction keeps it as recently used
+     * @param configurationId - the configuration id
+     */
+    protected static void touch(String configurationId) {
+        cacheIndex.touch(configurationId);
     }
 
     protected static void save(Configuration configuration) {
-        ConfigurationFile configurationFile = new ConfigurationFile();
-        configurationFile.save(configuration);
+        RecordFile recordFile = new RecordFile();
+        recordFile.save(configuration);
+        String configurationId = configurationId(configuration);
+        if (configurationId != null) {
+            cacheIndex.update(configurationId, recordFile.getFolder(configurationId), expiresAt(configuration));
+        }
+    }
+
+    /**
+     * Set the directory the cache folder is created in, instead of the WLClient context cache directory.
+     * Lets the cache run on a plain JVM, e.g. from a benchmark harness.
+     * @param directory - the cache directory, or null to use the context cache directory
+     */
+    protected static void setCacheDirectory(File directory) {
+        cacheDirectory = directory;
+    }
+
+    /**
+     * Set the payload size from which records are stored compressed (Deflate).
+     * Compressed and plain records can live side by side, the record header tells them apart.
+     * @param threshold - the payload size in bytes, 0 to store every record uncompressed
+     */
+    protected static void setCompressionThreshold(int threshold) {
+        compressionThreshold = threshold;
     }
 
+    /**
+     * Delete the cached files of a configuration
+     * @param configurationId - the configuration id
+     */
+    protected static void delete(String configurationId) {
+        File folder = new RecordFile().getFolder(configurationId);
+        File[] files = folder.listFiles();
+        boolean hasSubFolders = false;
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    hasSubFolders = true;
+                } else if (!file.delete()) {
+                    logger.error("delete: cannot delete file:" + file.getAbsolutePath());
+                }
+            }
+        }
+        if (!hasSubFolders && folder.exists() && !folder.delete()) {
+            logger.error("delete: cannot delete folder:" + folder.getAbsolutePath());
+        }
+        cacheIndex.remove(configurationId);
+    }
+
+    /**
+     * Get the cached configurations to delete so that the disk cache fits its budget:
+     * configurations expired longer than maxExpiredAge ago, then the least recently used ones.
+     * The first call scans the cache folder.
+     * @param maxSize - the disk budget in bytes
+     * @param maxExpiredAge - how long (in millis) an expired configuration is kept
+     * @return the configuration ids to delete, in eviction order
+     */
+    protected static List<String> evictionCandidates(long maxSize, long maxExpiredAge) {
+        return cacheIndex.evictionCandidates(maxSize, maxExpiredAge);
+    }
+
+    /**
+     * Get the size of the disk cache, as known to the cache index
+     * @return the disk cache size in bytes
+     */
+    protected static long size() {
+        return cacheIndex.size();
+    }
+
+    /**
+     * Update the expiration time of a cached configuration without rewriting its payload
+     * @param configuration - the revalidated configuration
+     */
+    protected static void updateExpiresAt(Configuration configuration) {
+        if (configuration instanceof ConfigurationInstance) {
+            ConfigurationInstance configurationInstance = (ConfigurationInstance) configuration;
+            RecordFile recordFile = new RecordFile();
+            if (recordFile.updateExpiresAt(configurationInstance.getId(), expiresAt(configuration), configurationInstance.getFetchedAt())) {
+                cacheIndex.update(configurationInstance.getId(), recordFile.getFolder(configurationInstance.getId()), expiresAt(configuration));
+            } else {
+                save(configuration);
+            }
+        }
+    }
+
+    /**
+     * Move the cache folder of a configuration to a new id, if the new id has no cache folder yet
+     * @param configurationId - the current configuration id
+     * @param newConfigurationId - the new configuration id
+     */
+    protected static void rename(String configurationId, String newConfigurationId) {
+        CacheFile cacheFile = new RecordFile();
+        File folder = cacheFile.getFolder(configurationId);
+        File newFolder = cacheFile.getFolder(newConfigurationId);
+        if (!folder.isDirectory() || newFolder.exists()) {
+            return;
+        }
+
+        logger.debug("rename: migrating cache folder. configurationId = " + configurationId + ", newConfigurationId = " + newConfigurationId);
+        cacheFile.createDirs(newFolder.getParentFile());
+        if (!folder.renameTo(newFolder)) {
+            logger.error("rename: cannot rename cache folder:" + folder.getAbsolutePath());
+            return;
+        }
+        cacheIndex.remove(configurationId);
+        cacheIndex.update(newConfigurationId, newFolder, 0);
+    }
+
+    protected static String configurationId(Configuration configuration) {
+        return configuration instanceof ConfigurationInstance ? ((ConfigurationInstance) configuration).getId() : null;
+    }
+
+    /**
+     * Get the expiration time of a configuration
+     * @param configuration - the configuration
+     * @return the expiration time in epoch millis, or 0 if it cannot be determined
+     */
+    protected static long expiresAt(Configuration configuration) {
+        return configuration instanceof ConfigurationInstance ? ((ConfigurationInstance) configuration).getExpiresAt() : 0;
+    }
+
+    /**
+     * Parse an HTTP date (RFC 1123), such as the expiresAt field or the Expires header
+     * @param date - the date string
+     * @return the date in epoch millis
+     */
+    public static long parseHttpDate(String date) throws ParseException {
+        return httpDateFormat.get().parse(date).getTime();
+    }
+
+
+    /**
+     * RecordPayload - where the JSON payload of a configuration read from the cache is stored, read on first use
+     * </p>
+     * The record may be replaced or evicted before the payload is asked for. The payload is only read back when
+     * the record header still describes it: same flags, payload length and file size, and the same validator,
+     * or the same fetch time when there is none (records without a validator are never revalidated in place).
+     */
+    public static final class RecordPayload {
+        private final String configurationId;
+        private final short flags;
+        private final int payloadOffset;
+        private final int payloadLength;
+        private final long fileSize;
+        private final long fetchedAt;
+        private final String validator;
+
+        private RecordPayload(String configurationId, RecordFile.Header header, long fileSize) {
+            this.configurationId = configurationId;
+            this.flags = header.flags;
+            this.payloadOffset = header.payloadOffset;
+            this.payloadLength = header.payloadLength;
+            this.fileSize = fileSize;
+            this.fetchedAt = header.fetchedAt;
+            this.validator = header.validator;
+        }
+
+        /**
+         * Read the payload from the record
+         * @return the payload, or null if the record no longer holds it
+         */
+        public String read() {
+            return new RecordFile().readPayload(this);
+        }
+
+        private boolean isHeldBy(RecordFile.Header header, long fileSize) {
+            if (header.flags != flags || header.payloadOffset != payloadOffset || header.payloadLength != payloadLength || fileSize != this.fileSize) {
+                return false;
+            }
+            return validator != null ? validator.equals(header.validator) : header.validator == null && header.fetchedAt == fetchedAt;
+        }
+    }
 
     //CacheFile
     private  static class CacheFile {
         private final static String FOLDER_CACHE = "liveupdate/cache";
+        protected final static Charset UTF8 = Charset.forName("UTF-8");
 
         private String name;
 
@@ -70,187 +332,693 @@ public class CacheFileManager {
             this.name = name;
         }
 
+        protected static File getRoot() {
+            File directory = cacheDirectory;
+            return new File(directory != null ? directory : WLClient.getInstance().getContext().getCacheDir(), FOLDER_CACHE);
+        }
+
         protected File getFolder(String configurationId) {
-            return new File(WLClient.getInstance().getContext().getCacheDir(), FOLDER_CACHE + "/" + configurationId);
+            return new File(getRoot(), configurationId);
         }
 
         protected File getFile (String configurationId) {
             return new File(getFolder(configurationId), name);
         }
 
+        protected void createDirs(File cachedDir) {
+            if (!cachedDir.exists()) {
+                boolean isDirsCreated = cachedDir.mkdirs();
+                if (!isDirsCreated) {
+                    logger.error("createDirs: cannot create dirs file:" + cachedDir.getAbsolutePath());
+                }
+            }
+        }
+
+        protected void close(Closeable closeable, File cachedFile) {
+            try {
+                if (closeable != null) {
+                    closeable.close();
+                }
+            } catch (IOException e) {
+                logger.fatal("close: cannot close file:" + cachedFile.getAbsolutePath(), null, e);
+            }
+        }
+
+        /**
+         * Read a UTF-8 region of a file with a single bulk read into a heap buffer, and decode it once.
+         * Memory mapping and a CharsetDecoder into a CharBuffer were measured several times slower
+         * (see PayloadReadBenchmark), as a mapping is created and released on every read.
+         */
+        protected String decode(FileChannel channel, long position, int length) throws IOException {
+            ByteBuffer bytes = ByteBuffer.allocate(length);
+            readFully(channel, bytes, position);
+            return new String(bytes.array(), 0, length, UTF8);
+        }
+
+        protected void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("unexpected end of file");
+                }
+            }
+        }
+
+        protected void delete(String configurationId) {
+            File cachedFile = getFile(configurationId);
+            if (cachedFile.exists() && !cachedFile.delete()) {
+                logger.error("delete: cannot delete file:" + cachedFile.getAbsolutePath());
+            }
+        }
     }
 
-    //JSONFile => CacheFile
-    private static abstract class JSONFile extends CacheFile{
+    //CacheIndex - size, last access and expiration of each cached configuration
+    private static class CacheIndex {
+        private final ConcurrentHashMap<String, IndexEntry> entries = new ConcurrentHashMap<String, IndexEntry>();
+        private volatile boolean isScanned;
 
-        public JSONFile(String name) {
-            super(name);
+        public void touch(String configurationId) {
+            IndexEntry entry = entries.get(configurationId);
+            if (entry != null) {
+                entry.lastAccess = System.currentTimeMillis();
+            }
+        }
+
+        public void update(String configurationId, File folder, long expiresAt) {
+            IndexEntry entry = new IndexEntry(folderSize(folder), System.currentTimeMillis(), expiresAt);
+            IndexEntry existing = entries.put(configurationId, entry);
+            if (expiresAt <= 0 && existing != null) {
+                entry.expiresAt = existing.expiresAt;
+            }
+        }
+
+        public void remove(String configurationId) {
+            entries.remove(configurationId);
+        }
+
+        public long size() {
+            long size = 0;
+            for (IndexEntry entry : entries.values()) {
+                size += entry.size;
+            }
+            return size;
+        }
+
+        public List<String> evictionCandidates(long maxSize, long maxExpiredAge) {
+            if (!isScanned) {
+                scan();
+            }
+
+            long now = System.currentTimeMillis();
+            long size = 0;
+            List<String> candidates = new ArrayList<String>();
+            List<Map.Entry<String, IndexEntry>> remaining = new ArrayList<Map.Entry<String, IndexEntry>>();
+            for (Map.Entry<String, IndexEntry> entry : entries.entrySet()) {
+                long expiresAt = entry.getValue().expiresAt;
+                if (expiresAt > 0 && now - expiresAt > maxExpiredAge) {
+                    candidates.add(entry.getKey());
+                } else {
+                    remaining.add(entry);
+                    size += entry.getValue().size;
+                }
+            }
+
+            Collections.sort(remaining, new Comparator<Map.Entry<String, IndexEntry>>() {
+                @Override
+                public int compare(Map.Entry<String, IndexEntry> first, Map.Entry<String, IndexEntry> second) {
+                    long firstAccess = first.getValue().lastAccess;
+                    long secondAccess = second.getValue().lastAccess;
+                    return firstAccess < secondAccess ? -1 : (firstAccess == secondAccess ? 0 : 1);
+                }
+            });
+            for (int i = 0; i < remaining.size() && size > maxSize; i++) {
+                candidates.add(remaining.get(i).getKey());
+                size -= remaining.get(i).getValue().size;
+            }
+            return candidates;
+        }
+
+        // Builds the index from the cache folder, using the file modification time as the last access time
+        private synchronized void scan() {
+            if (isScanned) {
+                return;
+            }
+            File root = CacheFile.getRoot();
+            scan(root, root.getAbsolutePath().length() + 1);
+            isScanned = true;
+            logger.debug("scan: indexed cached configurations. count = " + entries.size());
+        }
+
+        private void scan(File folder, int rootPathLength) {
+            File[] files = folder.listFiles();
+            if (files == null) {
+                return;
+            }
+            RecordFile recordFile = new RecordFile();
+            long size = 0;
+            long lastModified = 0;
+            boolean isConfigurationFolder = false;
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    scan(file, rootPathLength);
+                } else {
+                    size += file.length();
+                    lastModified = Math.max(lastModified, file.lastModified());
+                    isConfigurationFolder = true;
+                }
+            }
+            if (isConfigurationFolder && folder.getAbsolutePath().length() > rootPathLength) {
+                String configurationId = folder.getAbsolutePath().substring(rootPathLength);
+                long expiresAt = recordFile.exists(configurationId) ? recordFile.readExpiresAt(configurationId) : lastModified;
+                entries.putIfAbsent(configurationId, new IndexEntry(size, lastModified, expiresAt));
+            }
+        }
+
+        private static long folderSize(File folder) {
+            long size = 0;
+            File[] files = folder.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.isFile()) {
+                        size += file.length();
+                    }
+                }
+            }
+            return size;
+        }
+
+        private static class IndexEntry {
+            final long size;
+            volatile long lastAccess;
+            volatile long expiresAt;
+
+            IndexEntry(long size, long lastAccess, long expiresAt) {
+                this.size = size;
+                this.lastAccess = lastAccess;
+                this.expiresAt = expiresAt;
+            }
+        }
+    }
+
+    //RecordFile => CacheFile
+    private static class RecordFile extends CacheFile {
+        private final static int MAGIC = 0x4C555243; // "LURC"
+        private final static short VERSION_1 = 1;
+        private final static short VERSION = 2;
+        private final static short FLAGS_NONE = 0;
+        private final static short FLAG_DEFLATE = 1;
+        private final static short FLAG_SNAPSHOT = 2;
+        private final static int HEADER_SIZE = 20;
+        private final static int HEADER_V2_SIZE = 30;
+        private final static int EXPIRES_AT_OFFSET = 8;
+        private final static int FETCHED_AT_OFFSET = 20;
+        private final static int MAX_VALIDATOR_LENGTH = 0xFFFF;
+        private final static String TEMP_SUFFIX = ".tmp";
+
+        public RecordFile() {
+            super("configuration.dat");
+        }
+
+        public boolean exists(String configurationId) {
+            return getFile(configurationId).exists();
         }
 
         /**
-         * Read cached JSON file and convert it to JSONObject
-         * @param configurationId -  the configuration id
-         * @return JSONObject
+         * Read the expiration time from the record header
+         * @param configurationId - the configuration id
+         * @return the expiration time in epoch millis, or 0 if the record cannot be read
          */
-        protected JSONObject read(String configurationId) {
-            BufferedReader in = null;
+        public long readExpiresAt(String configurationId) {
             File cachedFile = getFile(configurationId);
+            if (!cachedFile.exists()) {
+                return 0;
+            }
+
+            FileInputStream in = null;
+            try {
+                in = new FileInputStream(cachedFile);
+                Header header = readHeader(in.getChannel(), cachedFile, false);
+                return header != null ? header.expiresAt : 0;
+            } catch (FileNotFoundException e) {
+                logger.debug("readExpiresAt: record file was deleted while reading. configurationId = " + configurationId);
+            } catch (IOException e) {
+                logger.error("readExpiresAt: cannot read record file:" + cachedFile.getAbsolutePath(), null, e);
+            } finally {
+                close(in, cachedFile);
+            }
+            return 0;
+        }
 
+        public Configuration readConfiguration(String configurationId) {
+            File cachedFile = getFile(configurationId);
             if (!cachedFile.exists()) {
                 return null;
             }
 
-            JSONObject json = null;
-
+            FileInputStream in = null;
             try {
-                logger.trace("read: configurationId = " + configurationId);
-                FileReader reader = new FileReader(cachedFile);
-                in = new BufferedReader(reader);
-
-                StringBuilder jsonSB = new StringBuilder();
-                String line;
-                while((line = in.readLine()) != null){
-                    jsonSB.append(line);
+                logger.trace("readConfiguration: configurationId = " + configurationId);
+                in = new FileInputStream(cachedFile);
+                FileChannel channel = in.getChannel();
+                Header header = readHeader(channel, cachedFile, true);
+                if (header == null) {
+                    return null;
                 }
-                json =  new JSONObject(jsonSB.toString());
-            }  catch (IOException e) {
-                logger.error("read: cannot read json file:" + cachedFile.getAbsolutePath(), null, e);
+                if (header.payloadLength < 0 || header.payloadLength > channel.size() - header.payloadOffset) {
+                    logger.error("readConfiguration: truncated record file:" + cachedFile.getAbsolutePath());
+                    return null;
+                }
+                ConfigurationSnapshot snapshot = (header.flags & FLAG_SNAPSHOT) != 0
+                        ? readSnapshot(channel, cachedFile, header.payloadOffset + header.payloadLength)
+                        : null;
+                if (snapshot != null) {
+                    // Lookups are served from the snapshot, the payload stays on disk until the full data is asked for
+                    metrics.add(LiveUpdateMetrics.Counter.BYTES_READ, channel.size() - header.payloadLength);
+                    return new ConfigurationInstance(configurationId, new RecordPayload(configurationId, header, channel.size()), snapshot,
+                            header.expiresAt, header.fetchedAt, header.validator);
+                }
+
+                // Without a snapshot the payload must be valid JSON to serve lookups, check it now
+                String payload = readPayload(channel, header);
+                metrics.add(LiveUpdateMetrics.Counter.BYTES_READ, channel.size());
+                long parseStart = System.nanoTime();
+                JSONObject json = new JSONObject(payload);
+                metrics.record(LiveUpdateMetrics.Stage.JSON_PARSE, parseStart);
+                return new ConfigurationInstance(configurationId, json, header.expiresAt, header.fetchedAt, header.validator);
+            } catch (FileNotFoundException e) {
+                // Reads take no lock, the eviction may delete the record between the exists check and the open
+                logger.debug("readConfiguration: record file was deleted while reading. configurationId = " + configurationId);
+            } catch (IOException e) {
+                logger.error("readConfiguration: cannot read record file:" + cachedFile.getAbsolutePath(), null, e);
             } catch (JSONException e) {
-                logger.error("read: cannot read json file to JSONObject", null, e);
+                logger.error("readConfiguration: cannot read record payload to JSONObject", null, e);
             } finally {
-                try {
-                    if (in != null) {
-                        in.close();
-                    }
-                }  catch (IOException e) {
-                    logger.fatal("read: cannot close file:" + cachedFile.getAbsolutePath(), null, e);
+                close(in, cachedFile);
+            }
+            return null;
+        }
+
+        /**
+         * Read the payload of a configuration read earlier, if the record still holds that payload
+         * @param recordPayload - the payload location taken when the configuration was read
+         * @return the payload, or null if the record was replaced or deleted since
+         */
+        public String readPayload(RecordPayload recordPayload) {
+            File cachedFile = getFile(recordPayload.configurationId);
+            FileInputStream in = null;
+            try {
+                in = new FileInputStream(cachedFile);
+                FileChannel channel = in.getChannel();
+                Header header = readHeader(channel, cachedFile, true);
+                if (header == null || !recordPayload.isHeldBy(header, channel.size())) {
+                    logger.debug("readPayload: record was replaced. configurationId = " + recordPayload.configurationId);
+                    return null;
                 }
+                long readStart = System.nanoTime();
+                String payload = readPayload(channel, header);
+                metrics.add(LiveUpdateMetrics.Counter.BYTES_READ, header.payloadLength);
+                metrics.record(LiveUpdateMetrics.Stage.DISK_READ, readStart);
+                return payload;
+            } catch (FileNotFoundException e) {
+                logger.debug("readPayload: record file was deleted. configurationId = " + recordPayload.configurationId);
+            } catch (IOException e) {
+                logger.error("readPayload: cannot read record file:" + cachedFile.getAbsolutePath(), null, e);
+            } finally {
+                close(in, cachedFile);
             }
-            return json;
+            return null;
         }
 
-        protected void save(Configuration configuration) {
-            logger.trace("save: configurationId = " + configuration);
+        private String readPayload(FileChannel channel, Header header) throws IOException {
+            return (header.flags & FLAG_DEFLATE) != 0
+                    ? inflate(channel, header.payloadOffset, header.payloadLength)
+                    : decode(channel, header.payloadOffset, header.payloadLength);
+        }
 
-            if (configuration != null && configuration instanceof ConfigurationInstance) {
-                JSONObject json = generateJson((ConfigurationInstance) configuration);
-                if (json != null) {
-                    save(((ConfigurationInstance) configuration).getId(), json);
-                    return;
-                }
+        public void save(Configuration configuration) {
+            logger.trace("save: configuration = " + configuration);
+
+            if (configuration instanceof ConfigurationInstance && ((ConfigurationInstance) configuration).getData() != null) {
+                ConfigurationInstance configurationInstance = (ConfigurationInstance) configuration;
+                save(configurationInstance.getId(), expiresAt(configurationInstance), configurationInstance.getFetchedAt(),
+                        configurationInstance.getValidator(), configurationInstance.getData(), configurationInstance.getSnapshot());
+                return;
             }
 
             logger.error("save: cannot save configuration. configuration = " + configuration);
         }
 
-        private void save(String configurationId, JSONObject json) {
-            BufferedWriter out = null;
+        public void save(String configurationId, long expiresAt, JSONObject json) {
+            save(configurationId, expiresAt, 0, null, json, ConfigurationSnapshot.fromData(json));
+        }
+
+        /**
+         * Write the record to a temporary file and rename it over the cached file,
+         * so a crash during the write never leaves a truncated record behind
+         */
+        public void save(String configurationId, long expiresAt, long fetchedAt, String validator, JSONObject json, ConfigurationSnapshot snapshot) {
             File cachedFile = getFile(configurationId);
-            File cachedDir = getFolder(configurationId);
+            File tempFile = new File(getFolder(configurationId), cachedFile.getName() + TEMP_SUFFIX);
+            FileOutputStream fileOut = null;
+            long writeStart = System.nanoTime();
 
             try {
-                createDirsAndFile(cachedFile, cachedDir);
+                createDirs(getFolder(configurationId));
                 logger.trace("save: configurationId = " + configurationId + ",json = " + json);
-                FileWriter writer = new FileWriter(cachedFile, false);
-                out = new BufferedWriter(writer);
-                out.write(json.toString());
-            }  catch (IOException e) {
+                byte[] payload = json.toString().getBytes(UTF8);
+                short flags = FLAGS_NONE;
+                int threshold = compressionThreshold;
+                if (threshold > 0 && payload.length >= threshold) {
+                    payload = deflate(payload);
+                    flags = FLAG_DEFLATE;
+                }
+                byte[] snapshotBytes = snapshot != null ? snapshot.toBytes() : new byte[0];
+                if (snapshot != null) {
+                    flags |= FLAG_SNAPSHOT;
+                }
+                byte[] validatorBytes = validator != null ? validator.getBytes(UTF8) : new byte[0];
+                if (validatorBytes.length > MAX_VALIDATOR_LENGTH) {
+                    logger.error("save: validator too long, not caching it. configurationId = " + configurationId);
+                    validatorBytes = new byte[0];
+                }
+                fileOut = new FileOutputStream(tempFile, false);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, HEADER_V2_SIZE + validatorBytes.length + payload.length + 4 + snapshotBytes.length));
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeShort(flags);
+                out.writeLong(expiresAt);
+                out.writeInt(payload.length);
+                out.writeLong(fetchedAt);
+                out.writeShort(validatorBytes.length);
+                out.write(validatorBytes);
+                out.write(payload);
+                if (snapshot != null) {
+                    out.writeInt(snapshotBytes.length);
+                    out.write(snapshotBytes);
+                }
+                out.flush();
+                fileOut.getFD().sync();
+                fileOut.close();
+                fileOut = null;
+
+                if (!tempFile.renameTo(cachedFile)) {
+                    throw new IOException("cannot rename " + tempFile.getAbsolutePath());
+                }
+                metrics.add(LiveUpdateMetrics.Counter.BYTES_WRITTEN, cachedFile.length());
+                metrics.record(LiveUpdateMetrics.Stage.DISK_WRITE, writeStart);
+            } catch (IOException e) {
                 logger.fatal("save: cannot save file:" + cachedFile.getAbsolutePath(), null, e);
-            }  finally {
-                try {
-                    if (out != null) {
-                        out.flush();
-                        out.close();
-                    }
-                }  catch (IOException e) {
-                    logger.fatal("save: cannot close file:" + cachedFile.getAbsolutePath(), null, e);
+                if (tempFile.exists() && !tempFile.delete()) {
+                    logger.error("save: cannot delete temporary file:" + tempFile.getAbsolutePath());
                 }
+            } finally {
+                close(fileOut, cachedFile);
             }
         }
 
-        private void createDirsAndFile(File cachedFile, File cachedDir) throws IOException {
-            if (!cachedDir.exists()) {
-                boolean isDirsCreated = cachedDir.mkdirs();
-                if (isDirsCreated) {
-                    logger.error("createDirsAndFile: cannot create dirs file:" + cachedDir.getAbsolutePath());
+        /**
+         * Update the expiration time in the record header, leaving the payload untouched.
+         * Each field is a single aligned 8 byte write, so lock free readers see either its old or its new value.
+         * @return true if the record was updated
+         */
+        public boolean updateExpiresAt(String configurationId, long expiresAt, long fetchedAt) {
+            File cachedFile = getFile(configurationId);
+            if (!cachedFile.exists()) {
+                return false;
+            }
+
+            RandomAccessFile file = null;
+            try {
+                file = new RandomAccessFile(cachedFile, "rw");
+                FileChannel channel = file.getChannel();
+                Header header = readHeader(channel, cachedFile, false);
+                if (header == null) {
+                    return false;
                 }
+                ByteBuffer value = ByteBuffer.allocate(8);
+                value.putLong(expiresAt).flip();
+                channel.write(value, EXPIRES_AT_OFFSET);
+                if (header.version >= VERSION) {
+                    value.clear();
+                    value.putLong(fetchedAt).flip();
+                    channel.write(value, FETCHED_AT_OFFSET);
+                }
+                channel.force(false);
+                return true;
+            } catch (IOException e) {
+                logger.error("updateExpiresAt: cannot update record file:" + cachedFile.getAbsolutePath(), null, e);
+            } finally {
+                close(file, cachedFile);
             }
-            if (!cachedFile.exists()) {
-                boolean isFileCreated = cachedFile.createNewFile();
-                if (isFileCreated) {
-                    logger.error("createDirsAndFile: cannot create file file:" + cachedFile.getAbsolutePath());
+            return false;
+        }
+
+        /**
+         * Read the snapshot stored after the payload
+         * @return the snapshot, or null if it cannot be read
+         */
+        private ConfigurationSnapshot readSnapshot(FileChannel channel, File cachedFile, long position) throws IOException {
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+            readFully(channel, lengthBuffer, position);
+            lengthBuffer.flip();
+            int length = lengthBuffer.getInt();
+            if (length < 0 || length > channel.size() - position - 4) {
+                logger.error("readSnapshot: truncated snapshot:" + cachedFile.getAbsolutePath());
+                return null;
+            }
+            ByteBuffer bytes = ByteBuffer.allocate(length);
+            readFully(channel, bytes, position + 4);
+            bytes.flip();
+            ConfigurationSnapshot snapshot = ConfigurationSnapshot.fromBytes(bytes);
+            if (snapshot == null) {
+                logger.error("readSnapshot: unknown snapshot format:" + cachedFile.getAbsolutePath());
+            }
+            return snapshot;
+        }
+
+        /**
+         * Compress the payload, prefixed with its uncompressed length so the reader can size its buffer
+         */
+        private byte[] deflate(byte[] payload) throws IOException {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length / 4 + 4);
+            try {
+                bytes.write(ByteBuffer.allocate(4).putInt(payload.length).array());
+                DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater);
+                out.write(payload);
+                out.close();
+            } finally {
+                deflater.end();
+            }
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Stream a compressed payload from the channel through an inflater
+         */
+        private String inflate(FileChannel channel, long position, int length) throws IOException {
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+            readFully(channel, lengthBuffer, position);
+            lengthBuffer.flip();
+            int uncompressedLength = lengthBuffer.getInt();
+            if (uncompressedLength < 0) {
+                throw new IOException("invalid compressed payload length:" + uncompressedLength);
+            }
+
+            channel.position(position + 4);
+            Inflater inflater = new Inflater();
+            try {
+                InputStream in = new InflaterInputStream(new BoundedInputStream(Channels.newInputStream(channel), length - 4), inflater);
+                byte[] payload = new byte[uncompressedLength];
+                int offset = 0;
+                while (offset < uncompressedLength) {
+                    int count = in.read(payload, offset, uncompressedLength - offset);
+                    if (count < 0) {
+                        throw new EOFException("unexpected end of compressed payload");
+                    }
+                    offset += count;
+                }
+                return new String(payload, UTF8);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        private Header readHeader(FileChannel channel, File cachedFile, boolean full) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, buffer, 0);
+            buffer.flip();
+
+            Header header = new Header();
+            int magic = buffer.getInt();
+            header.version = buffer.getShort();
+            if (magic != MAGIC || (header.version != VERSION_1 && header.version != VERSION)) {
+                logger.error("readHeader: unknown record format:" + cachedFile.getAbsolutePath());
+                return null;
+            }
+            header.flags = buffer.getShort();
+            header.expiresAt = buffer.getLong();
+            header.payloadLength = buffer.getInt();
+            header.payloadOffset = HEADER_SIZE;
+
+            if (full && header.version >= VERSION) {
+                buffer = ByteBuffer.allocate(HEADER_V2_SIZE - HEADER_SIZE);
+                readFully(channel, buffer, HEADER_SIZE);
+                buffer.flip();
+                header.fetchedAt = buffer.getLong();
+                int validatorLength = buffer.getShort() & MAX_VALIDATOR_LENGTH;
+                if (validatorLength > 0) {
+                    ByteBuffer validator = ByteBuffer.allocate(validatorLength);
+                    readFully(channel, validator, HEADER_V2_SIZE);
+                    header.validator = new String(validator.array(), UTF8);
                 }
+                header.payloadOffset = HEADER_V2_SIZE + validatorLength;
             }
+            return header;
         }
 
-        protected abstract JSONObject generateJson(ConfigurationInstance configuration) ;
+        //BoundedInputStream - stops at the end of the payload, leaves the channel open
+        private static class BoundedInputStream extends FilterInputStream {
+            private int remaining;
+
+            BoundedInputStream(InputStream in, int length) {
+                super(in);
+                this.remaining = length;
+            }
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int value = super.read();
+                if (value >= 0) {
+                    remaining--;
+                }
+                return value;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int count) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int read = super.read(buffer, offset, Math.min(count, remaining));
+                if (read > 0) {
+                    remaining -= read;
+                }
+                return read;
+            }
+
+            @Override
+            public void close() {
+            }
+        }
 
+        //Header - the record header fields
+        private static class Header {
+            short version;
+            short flags;
+            long expiresAt;
+            int payloadLength;
+            long fetchedAt;
+            String validator;
+            int payloadOffset;
+        }
     }
 
-    //ConfigurationFile => JSONFile
-    private static class ConfigurationFile extends JSONFile {
+    //LegacyFiles - configuration.json + metadata.json written by previous versions
+    private static class LegacyFiles {
 
-        public ConfigurationFile() {
-            super("configuration.json");
+        public static boolean exist(RecordFile recordFile, String configurationId) {
+            return !recordFile.exists(configurationId) && new ConfigurationFile().getFile(configurationId).exists();
         }
 
-        public Configuration readConfiguration (String configurationId) {
-            JSONObject json = super.read(configurationId);
-            return json != null ? new ConfigurationInstance(configurationId, json) : null;
+        /**
+         * Convert a legacy cache folder into a record file, and remove the legacy files
+         * @param recordFile - the record file to write
+         * @param configurationId - the configuration id
+         */
+        public static void migrate(RecordFile recordFile, String configurationId) {
+            if (!exist(recordFile, configurationId)) {
+                return;
+            }
+
+            logger.debug("migrate: migrating legacy cache files. configurationId = " + configurationId);
+            ConfigurationFile configurationFile = new ConfigurationFile();
+            MetadataFile metadataFile = new MetadataFile();
+            JSONObject json = configurationFile.read(configurationId);
+            if (json != null) {
+                recordFile.save(configurationId, metadataFile.readExpiresAt(configurationId), json);
+            }
+            configurationFile.delete(configurationId);
+            metadataFile.delete(configurationId);
         }
+    }
 
-        @Override
-        public void save(Configuration configuration) {
-            if (configuration != null) {
-                super.save(configuration);
-                new MetadataFile().save(configuration);
+    //JSONFile => CacheFile
+    private static abstract class JSONFile extends CacheFile{
+
+        public JSONFile(String name) {
+            super(name);
+        }
+
+        /**
+         * Read cached JSON file and convert it to JSONObject
+         * @param configurationId -  the configuration id
+         * @return JSONObject
+         */
+        protected JSONObject read(String configurationId) {
+            File cachedFile = getFile(configurationId);
+
+            if (!cachedFile.exists()) {
+                return null;
+            }
+
+            JSONObject json = null;
+            FileInputStream in = null;
+
+            try {
+                logger.trace("read: configurationId = " + configurationId);
+                in = new FileInputStream(cachedFile);
+                FileChannel channel = in.getChannel();
+                json = new JSONObject(decode(channel, 0, (int) channel.size()));
+            }  catch (IOException e) {
+                logger.error("read: cannot read json file:" + cachedFile.getAbsolutePath(), null, e);
+            } catch (JSONException e) {
+                logger.error("read: cannot read json file to JSONObject", null, e);
+            } finally {
+                close(in, cachedFile);
             }
+            return json;
         }
+    }
 
-        @Override
-        protected JSONObject generateJson(ConfigurationInstance configurationInstance) {
-            return configurationInstance.getData();
+    //ConfigurationFile => JSONFile
+    private static class ConfigurationFile extends JSONFile {
+
+        public ConfigurationFile() {
+            super("configuration.json");
         }
     }
 
     //MetadataFile => JSONFile
     private static class MetadataFile extends JSONFile {
-        private final static String ATTRIBUTE_EXPIRES_AT  = "expiresAt";
-        private final static String FORMATTER_PATTERN    = "EEE, dd MMM yyyy HH:mm:ss z";
-        private final static String FORMATTER_TIMEZONE  = "GMT";
 
         public MetadataFile() {
             super("metadata.json");
         }
 
-        public boolean isExpired(String configurationId) {
-            boolean isExpired = true;
+        public long readExpiresAt(String configurationId) {
+            long expiresAt = 0;
             JSONObject json = read(configurationId);
             if (json != null) {
                 try {
-                    String expiresAt = json.getString(ATTRIBUTE_EXPIRES_AT);
-                    SimpleDateFormat expiresSimpleDateFormat = new SimpleDateFormat(FORMATTER_PATTERN, Locale.US);
-                    expiresSimpleDateFormat.setTimeZone(TimeZone.getTimeZone(FORMATTER_TIMEZONE));
-
-                    Date expireDate = expiresSimpleDateFormat.parse(expiresAt);
-                    isExpired = new Date().after(expireDate);
+                    expiresAt = parseHttpDate(json.getString(ATTRIBUTE_EXPIRES_AT));
                 } catch (Exception e) {
-                    logger.error("isExpired: cannot get expiresAt field");
+                    logger.error("readExpiresAt: cannot get expiresAt field");
                 }
             }
-            return isExpired;
-        }
-
-        @Override
-        protected JSONObject generateJson(ConfigurationInstance configuration) {
-            JSONObject json = new JSONObject();
-            try {
-                json.put(ATTRIBUTE_EXPIRES_AT, configuration.getData().getString(ATTRIBUTE_EXPIRES_AT));
-            } catch (JSONException e) {
-                logger.error("generateJson: cannot add expiresAt metadata field");
-                json = null;
-            }
-            return json;
+            return expiresAt;
         }
     }
 
@@ -0,0 +1,312 @@
+/**
+ *   © Copyright 2016 IBM Corp.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache;
+
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.ConfigurationInstance;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ConfigurationSnapshot - the flat features and properties of a configuration
+ * </p>
+ * The snapshot is what lookups need from a configuration, without its JSON tree.
+ * It is persisted next to the JSON payload in a compact binary form:
+ * <pre>
+ *   int magic, short version
+ *   int stringCount, { int length, UTF-8 bytes } - interned string table
+ *   int featureCount, { int featureIdIndex }, enabled bitset bytes
+ *   int propertyCount, { int propertyIdIndex, int valueIndex } - property offset table
+ * </pre>
+ *
+ * @since 8.0.0
+ * @see CacheFileManager
+ */
+public final class ConfigurationSnapshot {
+    private final static int MAGIC = 0x4C55534E; // "LUSN"
+    private final static short VERSION = 1;
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    private final String[] featureIds;
+    private final BitSet enabledFeatures;
+    private final String[] propertyIds;
+    private final String[] propertyValues;
+
+    private ConfigurationSnapshot(String[] featureIds, BitSet enabledFeatures, String[] propertyIds, String[] propertyValues) {
+        this.featureIds = featureIds;
+        this.enabledFeatures = enabledFeatures;
+        this.propertyIds = propertyIds;
+        this.propertyValues = propertyValues;
+    }
+
+    public int getFeatureCount() {
+        return featureIds.length;
+    }
+
+    public String getFeatureId(int index) {
+        return featureIds[index];
+    }
+
+    public boolean isFeatureEnabled(int index) {
+        return enabledFeatures.get(index);
+    }
+
+    public int getPropertyCount() {
+        return propertyIds.length;
+    }
+
+    public String getPropertyId(int index) {
+        return propertyIds[index];
+    }
+
+    public String getPropertyValue(int index) {
+        return propertyValues[index];
+    }
+
+    /**
+     * Check if two snapshots have the same features and properties, regardless of their order
+     * @param other - the other snapshot
+     * @return true if both snapshots hold the same features and properties
+     */
+    public boolean contentEquals(ConfigurationSnapshot other) {
+        if (other == this) {
+            return true;
+        }
+        if (other == null || other.featureIds.length != featureIds.length || other.propertyIds.length != propertyIds.length) {
+            return false;
+        }
+
+        Map<String, Boolean> features = new HashMap<String, Boolean>();
+        for (int i = 0; i < featureIds.length; i++) {
+            features.put(featureIds[i], enabledFeatures.get(i));
+        }
+        for (int i = 0; i < other.featureIds.length; i++) {
+            if (!Boolean.valueOf(other.enabledFeatures.get(i)).equals(features.get(other.featureIds[i]))) {
+                return false;
+            }
+        }
+
+        Map<String, String> properties = new HashMap<String, String>();
+        for (int i = 0; i < propertyIds.length; i++) {
+            properties.put(propertyIds[i], propertyValues[i]);
+        }
+        for (int i = 0; i < other.propertyIds.length; i++) {
+            if (!other.propertyValues[i].equals(properties.get(other.propertyIds[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Flatten the features and properties of a configuration.
+     * Features must be booleans (or "true" / "false"), null properties are dropped and the others kept as strings.
+     * @param data - the configuration JSON, holding the data object
+     * @return the snapshot, empty when the configuration has no data
+     */
+    public static ConfigurationSnapshot fromData(JSONObject data) {
+        JSONObject dataObject = data != null ? data.optJSONObject(ConfigurationInstance.DATA_KEY) : null;
+        JSONObject featuresObject = dataObject != null ? dataObject.optJSONObject(ConfigurationInstance.FEATURES_KEY) : null;
+        JSONObject propertiesObject = dataObject != null ? dataObject.optJSONObject(ConfigurationInstance.PROPERTIES_KEY) : null;
+
+        List<String> featureIds = new ArrayList<String>();
+        BitSet enabledFeatures = new BitSet();
+        if (featuresObject != null) {
+            Iterator<String> keys = featuresObject.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                Object value = featuresObject.opt(key);
+                if (value instanceof String && ("true".equalsIgnoreCase((String) value) || "false".equalsIgnoreCase((String) value))) {
+                    value = Boolean.valueOf((String) value);
+                }
+                if (value instanceof Boolean) {
+                    enabledFeatures.set(featureIds.size(), (Boolean) value);
+                    featureIds.add(key);
+                }
+            }
+        }
+
+        List<String> propertyIds = new ArrayList<String>();
+        List<String> propertyValues = new ArrayList<String>();
+        if (propertiesObject != null) {
+            Iterator<String> keys = propertiesObject.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                Object value = propertiesObject.opt(key);
+                if (value != null && value != JSONObject.NULL) {
+                    propertyIds.add(key);
+                    propertyValues.add(String.valueOf(value));
+                }
+            }
+        }
+
+        return new ConfigurationSnapshot(featureIds.toArray(new String[featureIds.size()]), enabledFeatures,
+                propertyIds.toArray(new String[propertyIds.size()]), propertyValues.toArray(new String[propertyValues.size()]));
+    }
+
+    /**
+     * Build the configuration JSON holding the features and properties of the snapshot, properties as strings
+     * @return the configuration JSON, holding the data object
+     */
+    public JSONObject toData() {
+        try {
+            JSONObject features = new JSONObject();
+            for (int i = 0; i < featureIds.length; i++) {
+                features.put(featureIds[i], enabledFeatures.get(i));
+            }
+            JSONObject properties = new JSONObject();
+            for (int i = 0; i < propertyIds.length; i++) {
+                properties.put(propertyIds[i], propertyValues[i]);
+            }
+            JSONObject dataObject = new JSONObject();
+            dataObject.put(ConfigurationInstance.FEATURES_KEY, features);
+            dataObject.put(ConfigurationInstance.PROPERTIES_KEY, properties);
+            return new JSONObject().put(ConfigurationInstance.DATA_KEY, dataObject);
+        } catch (JSONException e) {
+            // Cannot happen with string keys and boolean or string values
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Encode the snapshot, interning repeated strings (e.g. property values) into a single string table
+     * @return the encoded snapshot
+     */
+    public byte[] toBytes() {
+        Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+        List<String> strings = new ArrayList<String>();
+        int[] featureIndexes = new int[featureIds.length];
+        for (int i = 0; i < featureIds.length; i++) {
+            featureIndexes[i] = intern(featureIds[i], stringIndexes, strings);
+        }
+        int[] propertyIndexes = new int[propertyIds.length * 2];
+        for (int i = 0; i < propertyIds.length; i++) {
+            propertyIndexes[i * 2] = intern(propertyIds[i], stringIndexes, strings);
+            propertyIndexes[i * 2 + 1] = intern(propertyValues[i], stringIndexes, strings);
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                byte[] stringBytes = string.getBytes(UTF8);
+                out.writeInt(stringBytes.length);
+                out.write(stringBytes);
+            }
+            out.writeInt(featureIndexes.length);
+            for (int featureIndex : featureIndexes) {
+                out.writeInt(featureIndex);
+            }
+            byte[] bits = new byte[(featureIndexes.length + 7) / 8];
+            for (int i = enabledFeatures.nextSetBit(0); i >= 0 && i < featureIndexes.length; i = enabledFeatures.nextSetBit(i + 1)) {
+                bits[i / 8] |= 1 << (i % 8);
+            }
+            out.write(bits);
+            out.writeInt(propertyIds.length);
+            for (int propertyIndex : propertyIndexes) {
+                out.writeInt(propertyIndex);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Cannot happen when writing to memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decode an encoded snapshot
+     * @param bytes - the encoded snapshot
+     * @return the snapshot, or null if the bytes are not a valid snapshot
+     */
+    public static ConfigurationSnapshot fromBytes(ByteBuffer bytes) {
+        try {
+            if (bytes.getInt() != MAGIC || bytes.getShort() != VERSION) {
+                return null;
+            }
+            int stringCount = bytes.getInt();
+            if (stringCount < 0 || stringCount > bytes.remaining() / 4) {
+                return null;
+            }
+            String[] strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                int length = bytes.getInt();
+                if (length < 0 || length > bytes.remaining()) {
+                    return null;
+                }
+                strings[i] = new String(bytes.array(), bytes.arrayOffset() + bytes.position(), length, UTF8);
+                bytes.position(bytes.position() + length);
+            }
+
+            int featureCount = bytes.getInt();
+            if (featureCount < 0 || featureCount > bytes.remaining() / 4) {
+                return null;
+            }
+            String[] featureIds = new String[featureCount];
+            for (int i = 0; i < featureCount; i++) {
+                featureIds[i] = strings[bytes.getInt()];
+            }
+            BitSet enabledFeatures = new BitSet(featureCount);
+            byte[] bits = new byte[(featureCount + 7) / 8];
+            bytes.get(bits);
+            for (int i = 0; i < featureCount; i++) {
+                enabledFeatures.set(i, (bits[i / 8] & (1 << (i % 8))) != 0);
+            }
+
+            int propertyCount = bytes.getInt();
+            if (propertyCount < 0 || propertyCount > bytes.remaining() / 8) {
+                return null;
+            }
+            String[] propertyIds = new String[propertyCount];
+            String[] propertyValues = new String[propertyCount];
+            for (int i = 0; i < propertyCount; i++) {
+                propertyIds[i] = strings[bytes.getInt()];
+                propertyValues[i] = strings[bytes.getInt()];
+            }
+            return new ConfigurationSnapshot(featureIds, enabledFeatures, propertyIds, propertyValues);
+        } catch (BufferUnderflowException e) {
+            return null;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static int intern(String string, Map<String, Integer> stringIndexes, List<String> strings) {
+        Integer index = stringIndexes.get(string);
+        if (index == null) {
+            index = strings.size();
+            stringIndexes.put(string, index);
+            strings.add(string);
+        }
+        return index;
+    }
+}
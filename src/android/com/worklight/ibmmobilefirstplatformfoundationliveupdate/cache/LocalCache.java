@@ -15,23 +15,440 @@
  */
 package com.worklight.ibmmobilefirstplatformfoundationliveupdate.cache;
 
+import com.worklight.ibmmobilefirstplatformfoundationliveupdate.LiveUpdateMetrics;
 import com.worklight.ibmmobilefirstplatformfoundationliveupdate.api.Configuration;
 
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * CacheFileManager
  * a facade class to the CacheFileManager
+ * </p>
+ * Configurations are kept in a bounded in-memory tier (LRU) in front of the CacheFileManager,
+ * so repeated lookups of the same configuration do not touch the file system.
+ * Reads never take a lock: records are replaced by an atomic rename, so a disk read sees either the
+ * previous or the new record, and lookups are never blocked behind a write. Writes, evictions and the
+ * migration of legacy cache files are serialized per configuration id.
+ * Saves are written to disk asynchronously by a write-behind queue that collapses repeated saves of the same id.
  *
  * @since 8.0.0
  * @author Ishai Borovoy
  * @see CacheFileManager
  */
 public class LocalCache {
+    private final static int DEFAULT_MEMORY_CAPACITY = 32;
+    private final static int LOCK_STRIPES = 16;
+    private final static long ANY_STALENESS = Long.MAX_VALUE / 2;
+    private final static LiveUpdateMetrics metrics = LiveUpdateMetrics.getInstance();
+    private final static long DEFAULT_MAX_DISK_SIZE = 5 * 1024 * 1024;
+    private final static long DEFAULT_MAX_EXPIRED_AGE = 7 * 24 * 60 * 60 * 1000L;
+
+    private static volatile long maxDiskSize = DEFAULT_MAX_DISK_SIZE;
+    private static volatile long maxExpiredAge = DEFAULT_MAX_EXPIRED_AGE;
+
+    private static final MemoryCache memoryCache = new MemoryCache(DEFAULT_MEMORY_CAPACITY);
+    private static final Object[] locks = new Object[LOCK_STRIPES];
+    private static final WriteBehindQueue writeBehindQueue = new WriteBehindQueue();
+
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public static void saveConfiguration(Configuration configuration) {
+        // Publish to memory first, so readers of this id never wait for the disk write
+        memoryCache.put(configuration);
+        writeBehindQueue.enqueue(configuration);
+    }
+
+    /**
+     * Store a configuration that was revalidated by the server (not modified).
+     * Only its expiration time is written to disk, the cached payload is kept as is.
+     * @param configuration - the revalidated configuration
+     */
+    public static void revalidateConfiguration(Configuration configuration) {
+        memoryCache.put(configuration);
+        writeBehindQueue.enqueueRevalidation(configuration);
+    }
+
+    public static Configuration getConfiguration(String configurationId) {
+        return getConfiguration(configurationId, 0);
+    }
+
+    /**
+     * Get a cached configuration, including one that expired no longer than maxStaleness ago
+     * @param configurationId - the configuration id
+     * @param maxStaleness - how long after its expiration (in millis) a configuration may still be returned
+     * @return the cached configuration, or null if it is not cached or too stale
+     * @see #isExpired(Configuration)
+     */
+    public static Configuration getConfiguration(String configurationId, long maxStaleness) {
+        return readConfiguration(configurationId, maxStaleness, true);
+    }
+
+    /**
+     * Get a cached configuration regardless of its expiration, for example to revalidate it.
+     * This is an internal read: it is not counted as a cache lookup in the metrics.
+     * @param configurationId - the configuration id
+     * @return the cached configuration, or null if it is not cached
+     */
+    public static Configuration getAnyConfiguration(String configurationId) {
+        return readConfiguration(configurationId, ANY_STALENESS, false);
+    }
+
+    // Only lookups made for callers are counted, so the hit rate is not inflated by revalidation and change detection
+    private static Configuration readConfiguration(String configurationId, long maxStaleness, boolean isLookup) {
+        Configuration configuration = memoryCache.get(configurationId, maxStaleness, isLookup);
+        if (configuration == null) {
+            configuration = writeBehindQueue.pending(configurationId, maxStaleness);
+        }
+        if (configuration != null) {
+            if (isLookup) {
+                metrics.increment(LiveUpdateMetrics.Counter.CACHE_MEMORY_HIT);
+                CacheFileManager.touch(configurationId);
+            }
+            return configuration;
+        }
+
+        // Migrating legacy files writes the record, the only disk read that must wait for the writer of the id
+        if (CacheFileManager.hasLegacyFiles(configurationId)) {
+            long lockStart = System.nanoTime();
+            synchronized (lockFor(configurationId)) {
+                if (isLookup) {
+                    metrics.record(LiveUpdateMetrics.Stage.CACHE_LOCK, lockStart);
+                }
+                CacheFileManager.migrateLegacyFiles(configurationId);
+            }
+        }
+
+        long readStart = System.nanoTime();
+        long expiresAt = CacheFileManager.expiresAt(configurationId);
+        configuration = isUsable(expiresAt, maxStaleness) ? CacheFileManager.configuration(configurationId) : null;
+        if (isLookup) {
+            metrics.record(LiveUpdateMetrics.Stage.DISK_READ, readStart);
+        }
+        if (configuration != null) {
+            memoryCache.putIfAbsent(configuration);
+        }
+        if (isLookup) {
+            if (configuration != null) {
+                metrics.increment(LiveUpdateMetrics.Counter.CACHE_DISK_HIT);
+            } else {
+                metrics.increment(expiresAt > 0 ? LiveUpdateMetrics.Counter.CACHE_EXPIRED : LiveUpdateMetrics.Counter.CACHE_MISS);
+            }
+        }
+        return configuration;
+    }
+
+    /**
+     * Get the expiration time of a configuration
+     * @param configuration - the configuration
+     * @return the expiration time in epoch millis, or 0 if it cannot be determined
+     */
+    public static long getExpiresAt(Configuration configuration) {
+        return CacheFileManager.expiresAt(configuration);
+    }
+
+    /**
+     * Check if a configuration is expired
+     * @param configuration - the configuration
+     * @return true if the configuration expiration time has passed
+     */
+    public static boolean isExpired(Configuration configuration) {
+        return System.currentTimeMillis() > CacheFileManager.expiresAt(configuration);
+    }
+
+    /**
+     * Move a configuration cached under a legacy id to its new id, unless the new id is already cached
+     * @param legacyId - the id used by previous versions
+     * @param configurationId - the new configuration id
+     */
+    public static void migrateConfiguration(String legacyId, String configurationId) {
+        if (legacyId == null || legacyId.length() == 0 || legacyId.equals(configurationId)) {
+            return;
+        }
+        synchronized (lockFor(configurationId)) {
+            CacheFileManager.rename(legacyId, configurationId);
+        }
+    }
+
+    /**
+     * Set the maximum number of configurations kept in memory
+     * @param capacity - the maximum number of entries, 0 disables the in-memory tier
+     */
+    public static void setMemoryCapacity(int capacity) {
+        memoryCache.setCapacity(capacity);
+    }
+
+    public static long getMemoryHitCount() {
+        return memoryCache.hits.get();
+    }
+
+    public static long getMemoryMissCount() {
+        return memoryCache.misses.get();
+    }
+
+    public static long getMemoryEvictionCount() {
+        return memoryCache.evictions.get();
+    }
 
-    public synchronized static void saveConfiguration(Configuration configuration) {
-        CacheFileManager.save (configuration);
+    /**
+     * Set the disk cache budget. When it is exceeded, the least recently used configurations are deleted in the background.
+     * @param maxSize - the maximum disk cache size in bytes
+     */
+    public static void setMaxDiskSize(long maxSize) {
+        maxDiskSize = maxSize;
+        writeBehindQueue.scheduleEviction();
     }
 
-    public synchronized static Configuration getConfiguration(String configurationId) {
-        return CacheFileManager.isExpired(configurationId) ? null : CacheFileManager.configuration(configurationId);
+    /**
+     * Set how long expired configurations are kept on disk before they are deleted
+     * @param maxAge - the time in millis after expiration
+     */
+    public static void setMaxExpiredAge(long maxAge) {
+        maxExpiredAge = maxAge;
+        writeBehindQueue.scheduleEviction();
+    }
+
+    /**
+     * Set the directory the disk cache is kept in, instead of the application cache directory.
+     * Meant for running the cache outside an Android application, e.g. in benchmarks. Set it before the cache is used.
+     * @param directory - the cache directory, or null to use the application cache directory
+     */
+    public static void setCacheDirectory(File directory) {
+        CacheFileManager.setCacheDirectory(directory);
+    }
+
+    /**
+     * Store configurations whose payload is at least threshold bytes compressed on disk.
+     * Compression shrinks typical payloads 8 to 11 times, but inflating costs about 3 microseconds per KB,
+     * so reads from the page cache are 1.6 to 2.6 times slower (see RecordFileBenchmark). It only pays off
+     * for payloads of several hundred KB read from slow flash, hence it is disabled by default.
+     * @param threshold - the payload size in bytes, 0 to disable compression
+     */
+    public static void setCompressionThreshold(int threshold) {
+        CacheFileManager.setCompressionThreshold(threshold);
+    }
+
+    /**
+     * Get the disk cache size, as known to the cache index
+     * @return the disk cache size in bytes
+     */
+    public static long getDiskSize() {
+        return CacheFileManager.size();
+    }
+
+    /**
+     * Get the number of configurations waiting to be written to disk
+     * @return the write-behind queue size
+     */
+    public static int getPendingWriteCount() {
+        return writeBehindQueue.pending.size();
+    }
+
+    private static boolean isUsable(long expiresAt, long maxStaleness) {
+        return System.currentTimeMillis() <= expiresAt + Math.max(maxStaleness, 0);
+    }
+
+    private static Object lockFor(String configurationId) {
+        int hash = configurationId != null ? configurationId.hashCode() : 0;
+        return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    //MemoryCache
+    private static class MemoryCache {
+        private final ConcurrentHashMap<String, MemoryEntry> entries = new ConcurrentHashMap<String, MemoryEntry>();
+        private final AtomicLong clock = new AtomicLong();
+        private volatile int capacity;
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        public MemoryCache(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public Configuration get(String configurationId, long maxStaleness, boolean isLookup) {
+            MemoryEntry entry = configurationId != null ? entries.get(configurationId) : null;
+            if (entry == null) {
+                if (isLookup) {
+                    misses.incrementAndGet();
+                }
+                return null;
+            }
+            if (!isUsable(entry.expiresAt, maxStaleness)) {
+                entries.remove(configurationId, entry);
+                if (isLookup) {
+                    misses.incrementAndGet();
+                }
+                return null;
+            }
+            if (isLookup) {
+                entry.lastAccess = clock.incrementAndGet();
+                hits.incrementAndGet();
+            }
+            return entry.configuration;
+        }
+
+        public void put(Configuration configuration) {
+            MemoryEntry entry = newEntry(configuration);
+            if (entry != null) {
+                entries.put(CacheFileManager.configurationId(configuration), entry);
+                trim();
+            }
+        }
+
+        public void putIfAbsent(Configuration configuration) {
+            MemoryEntry entry = newEntry(configuration);
+            if (entry != null) {
+                entries.putIfAbsent(CacheFileManager.configurationId(configuration), entry);
+                trim();
+            }
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+            trim();
+        }
+
+        private MemoryEntry newEntry(Configuration configuration) {
+            if (capacity <= 0 || CacheFileManager.configurationId(configuration) == null) {
+                return null;
+            }
+            MemoryEntry entry = new MemoryEntry(configuration, CacheFileManager.expiresAt(configuration));
+            entry.lastAccess = clock.incrementAndGet();
+            return entry;
+        }
+
+        // Evicts the least recently used entries, only writers pay for this
+        private synchronized void trim() {
+            int maxSize = Math.max(capacity, 0);
+            while (entries.size() > maxSize) {
+                Map.Entry<String, MemoryEntry> eldest = null;
+                for (Map.Entry<String, MemoryEntry> candidate : entries.entrySet()) {
+                    if (eldest == null || candidate.getValue().lastAccess < eldest.getValue().lastAccess) {
+                        eldest = candidate;
+                    }
+                }
+                if (eldest == null) {
+                    return;
+                }
+                if (entries.remove(eldest.getKey(), eldest.getValue())) {
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static class MemoryEntry {
+        final Configuration configuration;
+        final long expiresAt;
+        volatile long lastAccess;
+
+        MemoryEntry(Configuration configuration, long expiresAt) {
+            this.configuration = configuration;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    //WriteBehindQueue
+    private static class WriteBehindQueue {
+        private final ConcurrentHashMap<String, Configuration> pending = new ConcurrentHashMap<String, Configuration>();
+        private final AtomicBoolean isEvictionScheduled = new AtomicBoolean();
+        private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "liveupdate-cache-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        public void enqueue(Configuration configuration) {
+            final String configurationId = CacheFileManager.configurationId(configuration);
+            if (configurationId == null) {
+                CacheFileManager.save(configuration);
+                return;
+            }
+            // Only the first save of an id schedules a write, later saves replace the pending configuration
+            if (pending.put(configurationId, configuration) == null) {
+                schedule(configurationId);
+            }
+        }
+
+        public void enqueueRevalidation(final Configuration configuration) {
+            final String configurationId = CacheFileManager.configurationId(configuration);
+            // A full write is pending anyway, let it carry the new expiration time
+            if (configurationId == null || pending.containsKey(configurationId)) {
+                enqueue(configuration);
+                return;
+            }
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (lockFor(configurationId)) {
+                        CacheFileManager.updateExpiresAt(configuration);
+                    }
+                }
+            });
+        }
+
+        public Configuration pending(String configurationId, long maxStaleness) {
+            Configuration configuration = configurationId != null ? pending.get(configurationId) : null;
+            if (configuration != null && !isUsable(CacheFileManager.expiresAt(configuration), maxStaleness)) {
+                return null;
+            }
+            return configuration;
+        }
+
+        private void schedule(final String configurationId) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Configuration configuration = pending.get(configurationId);
+                    if (configuration == null) {
+                        return;
+                    }
+                    synchronized (lockFor(configurationId)) {
+                        CacheFileManager.save(configuration);
+                    }
+                    // A newer save arrived while writing, write it as well
+                    if (!pending.remove(configurationId, configuration)) {
+                        schedule(configurationId);
+                    }
+                    scheduleEviction();
+                }
+            });
+        }
+
+        // Runs after the queued writes, at most one eviction pass is queued at a time
+        public void scheduleEviction() {
+            if (!isEvictionScheduled.compareAndSet(false, true)) {
+                return;
+            }
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    isEvictionScheduled.set(false);
+                    for (String configurationId : CacheFileManager.evictionCandidates(maxDiskSize, maxExpiredAge)) {
+                        if (pending.containsKey(configurationId)) {
+                            continue;
+                        }
+                        synchronized (lockFor(configurationId)) {
+                            CacheFileManager.delete(configurationId);
+                        }
+                    }
+                }
+            });
+        }
     }
 }
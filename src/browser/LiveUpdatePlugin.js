@@ -164,8 +164,40 @@ function getConfiguration(success, error, options) {
   }
 }
 
+function getConfigurations(success, error, options) {
+  if (typeof options[0] !== "undefined") {
+    options = options[0];
+  }
+  const requests = Array.isArray(options['requests']) ? options['requests'] : [];
+  const results = requests.map((request) => new Promise((resolve) => {
+    const requestOptions = Object.assign({}, options, request);
+    delete requestOptions['requests'];
+    getConfiguration(
+      (configuration) => resolve({ configuration: configuration }),
+      (err) => resolve({ error: err }),
+      [requestOptions]);
+  }));
+  Promise.all(results).then((resolved) => success({ results: resolved }), error);
+}
+
+function getMetrics(success, error) {
+  error('getMetrics is not supported on the browser platform');
+}
+
+function subscribe(success, error) {
+  error('subscribe is not supported on the browser platform');
+}
+
+function unsubscribe(success, error) {
+  error('unsubscribe is not supported on the browser platform');
+}
+
 module.exports = {
-  getConfiguration: getConfiguration
+  getConfiguration: getConfiguration,
+  getConfigurations: getConfigurations,
+  getMetrics: getMetrics,
+  subscribe: subscribe,
+  unsubscribe: unsubscribe
 }
 
 require('cordova/exec/proxy').add('LiveUpdatePlugin', module.exports);
\ No newline at end of file
@@ -44,6 +44,78 @@
         }
     }
 
+    /**
+     Get several configurations in one call, in the order of the requests.
+
+     - Parameter command - A CDVInvokedUrlCommand object whose first argument is { requests: [{ segmentId }, { params }], useClientCache }.
+
+     - Returns: A CDVPluginResult object with { results: [...] }, each result being { configuration } or { error }.
+     */
+    @objc func getConfigurations (_ command: CDVInvokedUrlCommand){
+        let actionName = "getConfigurations"
+        guard let options = command.arguments[0] as? NSDictionary, let requests = options.value(forKey: "requests") as? [NSDictionary] else {
+            print("\(actionName): Invalid arguments.")
+            self.commandDelegate!.send(CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "Missing requests array"), callbackId: command.callbackId)
+            return
+        }
+        let defaultUseClientCache = options.value(forKey: "useClientCache") as? Bool ?? true
+
+        var results = [Any](repeating: NSNull(), count: requests.count)
+        let resultsLock = NSLock()
+        let group = DispatchGroup()
+        for (position, request) in requests.enumerated() {
+            let segmentId = request.value(forKey: "segmentId") as? String ?? "all"
+            let useClientCache = request.value(forKey: "useClientCache") as? Bool ?? defaultUseClientCache
+            let params = request.value(forKey: "params") as? [String:String] ?? [String:String]()
+            let completionHandler: (_ configuration: Configuration?, _ error: NSError?) -> Void = { configuration, error in
+                var result: [String:Any]
+                if error == nil, let configurationInstance = configuration as? ConfigurationInstance {
+                    result = ["configuration": configurationInstance.data["data"] ?? NSNull()]
+                } else {
+                    result = ["error": ["errorMsg": error?.localizedDescription ?? "Invalid configuration"]]
+                }
+                resultsLock.lock()
+                results[position] = result
+                resultsLock.unlock()
+                group.leave()
+            }
+
+            group.enter()
+            if (params.isEmpty){
+                LiveUpdateManager.sharedInstance.obtainConfiguration(segmentId, useCache: useClientCache, completionHandler: completionHandler)
+            } else {
+                LiveUpdateManager.sharedInstance.obtainConfiguration(params, useCache: useClientCache, completionHandler: completionHandler)
+            }
+        }
+
+        group.notify(queue: DispatchQueue.global()) {
+            resultsLock.lock()
+            let response: [AnyHashable: Any] = ["results": results]
+            resultsLock.unlock()
+            self.commandDelegate!.send(CDVPluginResult(status: CDVCommandStatus_OK, messageAs: response), callbackId: command.callbackId)
+        }
+    }
+
+    /// Metrics are only collected by the Android plugin
+    @objc func getMetrics (_ command: CDVInvokedUrlCommand){
+        sendNotSupported("getMetrics", command: command)
+    }
+
+    /// Change subscriptions are only supported by the Android plugin
+    @objc func subscribe (_ command: CDVInvokedUrlCommand){
+        sendNotSupported("subscribe", command: command)
+    }
+
+    /// Change subscriptions are only supported by the Android plugin
+    @objc func unsubscribe (_ command: CDVInvokedUrlCommand){
+        sendNotSupported("unsubscribe", command: command)
+    }
+
+    func sendNotSupported(_ actionName: String, command: CDVInvokedUrlCommand) {
+        print("\(actionName): not supported on iOS.")
+        self.commandDelegate!.send(CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "\(actionName) is not supported on iOS"), callbackId: command.callbackId)
+    }
+
     func getConfigurationWithSegmentId(_ segmentId: String, useClientCache: Bool, command: CDVInvokedUrlCommand){
         LiveUpdateManager.sharedInstance.obtainConfiguration(segmentId, useCache: useClientCache, completionHandler: completionHandler("getConfigurationWithSegmentId", command: command))
     }
@@ -10,8 +10,15 @@ declare module LiveUpdateManager {
     * is set in the MFP admin console.
     * map : (optional) - if supplied a JSON map (key:value) ,this will search a configuration
     *             that matches the included key-value pairs.
+    * staleWhileRevalidate : (optional) - true to return an expired cached configuration immediately and refresh it
+    *             in the background, as long as it expired no more than maxStaleness seconds ago.
+    * maxStaleness : (optional) - the maximum staleness in seconds for staleWhileRevalidate (default 86400).
+    * includeSource : (optional, Android) - true to receive { configuration : {...}, source : '...' } instead of the configuration,
+    *             where source is 'cache', 'network', 'last_known_good' (expired, served by staleWhileRevalidate or because
+    *             the server is unavailable) or 'bundled_default'.
     * for example: var liveUpdateParams = { useClientCache : true, map :  {longitude:'31.47N' , latitude:'35.13E' } };
     * another example: var liveUpdateParams = { useClientCache : false};
+    * another example: var liveUpdateParams = { useClientCache : true, staleWhileRevalidate : true, maxStaleness : 3600 };
     * @param {Function} success Mandatory function. The callback function that is invoked if the configuration search was successful
     * @param {Function} failure Mandatory function. The callback function that is invoked if the configuration lookup failed
                         the failure description in iOS is less descriptive than Android. 
@@ -23,4 +30,67 @@ declare module LiveUpdateManager {
     success: Function,
     failure: Function
   ): void;
+
+  /**
+    * Retrieves several MFP server configurations in a single call.
+    *
+    * @param {options} a JSON object with a requests array, each request being { segmentId } or { params },
+    * and the same cache options as obtainConfiguration.
+    * for example: var options = { requests : [{ segmentId : 'vip' }, { params : { country : 'IL' } }], useClientCache : true };
+    * @param {Function} success Mandatory function. Invoked with { results : [...] }, in the order of the requests,
+    *                   where each result is either { configuration : {...}, source : '...' } or { error : {...} }
+    *                   (the source is not reported on iOS)
+    * @param {Function} failure Mandatory function. Invoked if the options are invalid
+    *
+    * @methodOf LiveUpdatePluin#
+    */
+  function obtainConfigurations(
+    options: Object,
+    success: Function,
+    failure: Function
+  ): void;
+
+  /**
+    * Retrieves the plug-in metrics (Android only, iOS and the browser invoke failure).
+    *
+    * @param {Function} success Mandatory function. Invoked with { counters : {...}, cacheHitRate, cacheExpiredRate,
+    *                   stages : { <stage> : { count, meanMicros, p50Micros, p95Micros, p99Micros, maxMicros } }, executor : {...} }
+    * @param {Function} failure Mandatory function. Invoked if the metrics cannot be read
+    *
+    * @methodOf LiveUpdatePluin#
+    */
+  function getMetrics(
+    success: Function,
+    failure: Function
+  ): void;
+
+  /**
+    * Subscribes to the changes of a configuration (Android only, iOS and the browser invoke failure).
+    *
+    * @param {options} { segmentId : 'vip' } or { params : { country : 'IL' } }
+    * @param {Function} change Mandatory function. Invoked with the new configuration each time it changes on the server
+    * @param {Function} failure Mandatory function. Invoked if the subscription failed
+    *
+    * @methodOf LiveUpdatePluin#
+    */
+  function subscribe(
+    options: Object,
+    change: Function,
+    failure: Function
+  ): void;
+
+  /**
+    * Unsubscribes all the callbacks subscribed to the changes of a configuration (Android only, iOS and the browser invoke failure).
+    *
+    * @param {options} the options given to subscribe
+    * @param {Function} success Mandatory function. Invoked with true if subscriptions were removed
+    * @param {Function} failure Mandatory function. Invoked if the options are invalid
+    *
+    * @methodOf LiveUpdatePluin#
+    */
+  function unsubscribe(
+    options: Object,
+    success: Function,
+    failure: Function
+  ): void;
 }
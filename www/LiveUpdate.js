@@ -20,6 +20,10 @@ var NATIVE_CLASS_NAME = "LiveUpdatePlugin";
  * @param useClientCache -  true (default) tells the native iOS/Android code if we want to cache the result of the calls . cache expiratrion
  * is set in the MFP admin console.
  * @param map - this map (as JSON Array) is convered to query params to be analyzed by the Live Update Resolver API
+ * @param staleWhileRevalidate - (optional) true to return an expired cached configuration immediately and refresh it in the background
+ * @param maxStaleness - (optional) how long (in seconds) after its expiration a cached configuration may still be returned
+ * @param includeSource - (optional, Android) true to receive { configuration: {...}, source: "..." } instead of the configuration,
+ * where source is "cache", "network", "last_known_good" or "bundled_default"
  * for example: var liveUpdateParams = { useClientCache : true };
  */
 var manager = {
@@ -31,6 +35,70 @@ var manager = {
       "getConfiguration", // action name
       [options]
     );
+  },
+
+  /**
+   * Obtains several configurations in one call.
+   * @param options - { requests: [{ segmentId: "vip" }, { params: { a: 2 } }], useClientCache: true }
+   * successCallback receives { results: [...] } in the order of the requests, where each result is either
+   * { configuration: {...}, source: "..." } or { error: {...} } (the source is not reported on iOS)
+   */
+  obtainConfigurations: function(options, successCallback, errorCallback) {
+    cordova.exec(
+      successCallback, // success callback function
+      errorCallback, // error callback function
+      NATIVE_CLASS_NAME, // Maps to Java/Swift/Java Script Class
+      "getConfigurations", // action name
+      [options]
+    );
+  },
+
+  /**
+   * Gets the plug-in metrics: cache counters and hit rates, bytes read and written,
+   * and latency percentiles (in microseconds) of each stage.
+   * Android only: iOS and the browser call errorCallback.
+   */
+  getMetrics: function(successCallback, errorCallback) {
+    cordova.exec(
+      successCallback, // success callback function
+      errorCallback, // error callback function
+      NATIVE_CLASS_NAME, // Maps to Java/Swift/Java Script Class
+      "getMetrics", // action name
+      []
+    );
+  },
+
+  /**
+   * Subscribes to the changes of a configuration, instead of polling with obtainConfiguration.
+   * @param options - { segmentId: "vip" } or { params: { a: 2 } }
+   * changeCallback is called with the new configuration each time it changes on the server,
+   * as found by the background refresh. Several callbacks may subscribe to the same configuration.
+   * Android only: iOS and the browser call errorCallback.
+   */
+  subscribe: function(options, changeCallback, errorCallback) {
+    cordova.exec(
+      changeCallback, // change callback function
+      errorCallback, // error callback function
+      NATIVE_CLASS_NAME, // Maps to Java/Swift/Java Script Class
+      "subscribe", // action name
+      [options]
+    );
+  },
+
+  /**
+   * Unsubscribes all the callbacks subscribed to the changes of a configuration.
+   * @param options - the options given to subscribe
+   * successCallback receives true if subscriptions were removed
+   * Android only: iOS and the browser call errorCallback.
+   */
+  unsubscribe: function(options, successCallback, errorCallback) {
+    cordova.exec(
+      successCallback, // success callback function
+      errorCallback, // error callback function
+      NATIVE_CLASS_NAME, // Maps to Java/Swift/Java Script Class
+      "unsubscribe", // action name
+      [options]
+    );
   }
 };
 